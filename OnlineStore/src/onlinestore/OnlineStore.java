@@ -1,17 +1,35 @@
 package onlinestore;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
+import tables.CacheMetrics;
+import tables.CacheStats;
+import tables.ConnectionPool;
+import tables.DatabaseManager;
+import tables.QueryMetrics;
+import tables.StatementStats;
+import tables.Table;
+import tables.UnitOfWork;
+import tables.address.Address;
+import tables.bulk.BulkLoader;
+import tables.bulk.DataGenerator;
+import tables.bulk.OrderExport;
 import tables.customer.Customer;
 import tables.distributor.Distributor;
+import tables.memory.MemoryEngine;
 import tables.order.Order;
 import tables.order.OrderItem;
 import tables.order.OrderStatus;
+import tables.product.CatalogWarmup;
 import tables.product.Inventory;
 import tables.product.Product;
 import tables.product.ProductType;
 import tables.wishlist.Wishlist;
 import tables.wishlist.WishlistItem;
 import view.Menu;
+import workload.Workload;
 import static view.Mappings.*;
 import tables.product.Inventory;
 import tables.product.Product;
@@ -36,12 +54,19 @@ public class OnlineStore {
         return new Menu<Order, Void>("Edit Address") {
             @Override
             protected void performAction() {
-                parent.getState().getPayment().getBillAddress().setStreet(Utilities.getString("Street: ", 100));
-                parent.getState().getPayment().getBillAddress().setCity(Utilities.getString("City: ", 50));
-                parent.getState().getPayment().getBillAddress().setState(Utilities.getString("State: ", 50));
-                parent.getState().getPayment().getBillAddress().setCountry(Utilities.getString("Country: ", 50));
-                parent.getState().getPayment().getBillAddress().setZipCode(Utilities.getString("Zip Code: ", 10));
-                parent.getState().getPayment().getBillAddress().setApartmentNumber(Utilities.getString("Apartment Number: ", 20));
+                Address address = parent.getState().getPayment().getBillAddress();
+
+                // Save every field with one update
+                try (UnitOfWork work = UnitOfWork.begin()) {
+                    address.setStreet(Utilities.getString("Street: ", 100));
+                    address.setCity(Utilities.getString("City: ", 50));
+                    address.setState(Utilities.getString("State: ", 50));
+                    address.setCountry(Utilities.getString("Country: ", 50));
+                    address.setZipCode(Utilities.getString("Zip Code: ", 10));
+                    address.setApartmentNumber(Utilities.getString("Apartment Number: ", 20));
+
+                    work.flush();
+                }
             }
         }.confirmation();
     }
@@ -50,20 +75,103 @@ public class OnlineStore {
         return new Menu<Distributor, Void>("Edit Address") {
             @Override
             protected void performAction() {
-                parent.getState().getAddress().setStreet(Utilities.getString("Street: ", 100));
-                parent.getState().getAddress().setCity(Utilities.getString("City: ", 50));
-                parent.getState().getAddress().setState(Utilities.getString("State: ", 50));
-                parent.getState().getAddress().setCountry(Utilities.getString("Country: ", 50));
-                parent.getState().getAddress().setZipCode(Utilities.getString("Zip Code: ", 10));
-                parent.getState().getAddress().setApartmentNumber(Utilities.getString("Apartment Number: ", 20));
+                Address address = parent.getState().getAddress();
+
+                // Save every field with one update
+                try (UnitOfWork work = UnitOfWork.begin()) {
+                    address.setStreet(Utilities.getString("Street: ", 100));
+                    address.setCity(Utilities.getString("City: ", 50));
+                    address.setState(Utilities.getString("State: ", 50));
+                    address.setCountry(Utilities.getString("Country: ", 50));
+                    address.setZipCode(Utilities.getString("Zip Code: ", 10));
+                    address.setApartmentNumber(Utilities.getString("Apartment Number: ", 20));
+
+                    work.flush();
+                }
             }
         }.confirmation();
     }
 
     /**
-     * @param args the command line arguments
+     * Runs a command given on the command line instead of the menus
+     *
+     * @param args command and its arguments
+     */
+    private static void runCommand(String[] args) {
+        switch (args[0]) {
+            case "load-products" -> {
+                requireArguments(args, 2, "load-products <file.csv>");
+                System.out.println(BulkLoader.loadProducts(Path.of(args[1])));
+            }
+            case "load-customers" -> {
+                requireArguments(args, 2, "load-customers <file.csv>");
+                System.out.println(BulkLoader.loadCustomers(Path.of(args[1])));
+            }
+            case "export-orders" -> {
+                requireArguments(args, 2, "export-orders <file.csv.gz> [from yyyy-mm-dd] [to yyyy-mm-dd]");
+
+                LocalDate from = (args.length > 2) ? LocalDate.parse(args[2]) : null;
+                LocalDate to = (args.length > 3) ? LocalDate.parse(args[3]) : null;
+
+                System.out.println(OrderExport.exportOrders(Path.of(args[1]), from, to));
+            }
+            case "generate" -> {
+                int products = (args.length > 1) ? Integer.parseInt(args[1]) : 100_000;
+                int customers = (args.length > 2) ? Integer.parseInt(args[2]) : products / 2;
+                long seed = (args.length > 3) ? Long.parseLong(args[3]) : 1;
+
+                System.out.println(DataGenerator.generate(new DataGenerator.Settings(seed, products, customers)));
+            }
+            case "workload" -> {
+                if (Table.getEngine() instanceof MemoryEngine) {
+                    // The in-memory store starts empty, so give the shoppers a catalog
+                    System.out.println(DataGenerator.generate(new DataGenerator.Settings(1, 10_000, 5_000)));
+                }
+
+                int users = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+                long seconds = (args.length > 2) ? Long.parseLong(args[2]) : 30;
+                long thinkMillis = (args.length > 3) ? Long.parseLong(args[3]) : 500;
+
+                System.out.print(Workload.run(new Workload.Settings(users, Duration.ofSeconds(seconds), Duration.ofMillis(thinkMillis))));
+
+                for (CacheStats stats : CacheMetrics.getCaches()) {
+                    System.out.println(stats);
+                }
+
+                if (!(Table.getEngine() instanceof MemoryEngine)) {
+                    System.out.println(DatabaseManager.getPool());
+                }
+            }
+            default -> {
+                System.err.println("Unknown command: " + args[0]);
+                System.err.println("Commands: load-products <file.csv>, load-customers <file.csv>, "
+                        + "export-orders <file.csv.gz> [from] [to], generate [products] [customers] [seed], workload [users] [seconds] [think-ms]");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void requireArguments(String[] args, int count, String usage) {
+        if (args.length < count) {
+            System.err.println("Usage: " + usage);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param args the command line arguments, or none to start the menus
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            runCommand(args);
+            return;
+        }
+
+        // The menus take input while the caches fill
+        if (CatalogWarmup.isEnabled()) {
+            CatalogWarmup.warmUpAsync();
+        }
+
         Menu showProducts = new Menu<Void, Product>("Show Products") {
             @Override
             protected void performAction() {
@@ -444,6 +552,75 @@ public class OnlineStore {
                 .add(productInRange)
                 .add(productByCategory);
 
+        // ------ Diagnostics --------
+        Menu diagnostics = new Menu<Void, Void>("Diagnostics");
+
+        Menu diagnosticsQueries = new Menu<Void, Void>("Query Metrics") {
+            @Override
+            protected void performAction() {
+                List<StatementStats> statements = QueryMetrics.getStatements();
+
+                if (statements.isEmpty()) {
+                    System.out.println("No queries recorded.");
+                }
+
+                // Most total time first
+                for (StatementStats stats : statements) {
+                    System.out.println(MAP_STATEMENT_STATS.apply(stats));
+                }
+
+                System.out.printf("%d statements, %d calls\n", statements.size(), QueryMetrics.getTotalCalls());
+            }
+        };
+
+        Menu diagnosticsPools = new Menu<Void, Void>("Connection Pools") {
+            @Override
+            protected void performAction() {
+                if (Table.getEngine() instanceof MemoryEngine) {
+                    System.out.println("In-memory storage has no connection pools");
+                    return;
+                }
+
+                System.out.println("Primary: " + DatabaseManager.getPool());
+
+                for (ConnectionPool replica : DatabaseManager.getReplicaPools()) {
+                    System.out.println("Replica: " + replica);
+                }
+            }
+        };
+
+        Menu diagnosticsCaches = new Menu<Void, Void>("Entity Caches") {
+            @Override
+            protected void performAction() {
+                for (CacheStats stats : CacheMetrics.getCaches()) {
+                    System.out.println(MAP_CACHE_STATS.apply(stats));
+                }
+
+                System.out.printf("Overall hit ratio: %.1f%%\n", CacheMetrics.getHitRatio() * 100);
+            }
+        };
+
+        Menu diagnosticsReset = new Menu<Void, Void>("Reset Query Metrics") {
+            @Override
+            protected void performAction() {
+                QueryMetrics.reset();
+            }
+        }.confirmation();
+
+        Menu diagnosticsCacheReset = new Menu<Void, Void>("Reset Cache Statistics") {
+            @Override
+            protected void performAction() {
+                CacheMetrics.reset();
+            }
+        }.confirmation();
+
+        diagnostics
+                .add(diagnosticsQueries)
+                .add(diagnosticsPools)
+                .add(diagnosticsCaches)
+                .add(diagnosticsReset)
+                .add(diagnosticsCacheReset);
+
         // ------ Home Menu ---------
         homeMenu
                 .add(customerView)
@@ -455,6 +632,7 @@ public class OnlineStore {
                 .add(deleteCustomer)
                 //                .add(deleteDistributor)
                 .add(productRankings)
+                .add(diagnostics)
                 .run();
 
     }
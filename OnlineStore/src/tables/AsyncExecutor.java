@@ -0,0 +1,63 @@
+package tables;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs queries on virtual threads. At most as many tasks run at once as the
+ * connection pool has connections, so queued tasks wait here instead of timing
+ * out waiting for a connection.
+ *
+ * @author karsten
+ */
+final class AsyncExecutor {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static volatile Semaphore permits;
+
+    private AsyncExecutor() {
+    }
+
+    /**
+     * Runs the work on its own virtual thread. The work does not join a
+     * transaction open on the calling thread.
+     *
+     * @param <T> result type
+     * @param work work to run
+     * @return future result of the work
+     */
+    static <T> CompletableFuture<T> supply(Supplier<T> work) {
+        Semaphore limit = getPermits();
+
+        return CompletableFuture.supplyAsync(() -> {
+            limit.acquireUninterruptibly();
+
+            try {
+                return work.get();
+            } finally {
+                limit.release();
+            }
+        }, EXECUTOR);
+    }
+
+    private static Semaphore getPermits() {
+        if (permits == null) {
+            synchronized (AsyncExecutor.class) {
+                if (permits == null) {
+                    // Only a JDBC engine has connections to run out of
+                    int size = (Table.getEngine() instanceof JdbcEngine)
+                            ? DatabaseManager.getPool().getMaxSize()
+                            : Runtime.getRuntime().availableProcessors();
+
+                    permits = new Semaphore(size);
+                }
+            }
+        }
+
+        return permits;
+    }
+}
@@ -0,0 +1,182 @@
+package tables;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the entity caches and their statistics. Every cache created
+ * through Table is listed here, exposed over JMX, and summarized in a log
+ * line every onlinestore.cache.logInterval seconds (300 by default, 0 turns
+ * the line off) with the hit ratio of each cache over that interval.
+ *
+ * @author karsten
+ */
+public final class CacheMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(CacheMetrics.class.getName());
+    private static final long LOG_INTERVAL_SECONDS = Long.getLong("onlinestore.cache.logInterval", 300);
+
+    private static final List<EntityCache<?>> caches = new CopyOnWriteArrayList<>();
+    // Counters at the previous log line, only touched by the logging thread
+    private static final Map<String, CacheStats> logged = new HashMap<>();
+
+    static {
+        register();
+
+        if (LOG_INTERVAL_SECONDS > 0) {
+            ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "cache-metrics-logger");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            logger.scheduleAtFixedRate(CacheMetrics::log, LOG_INTERVAL_SECONDS, LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private CacheMetrics() {
+    }
+
+    private static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName name = new ObjectName("tables:type=CacheMetrics");
+
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new CacheMetricsMXBean() {
+                    @Override
+                    public List<CacheStats> getCaches() {
+                        return CacheMetrics.getCaches();
+                    }
+
+                    @Override
+                    public double getHitRatio() {
+                        return CacheMetrics.getHitRatio();
+                    }
+
+                    @Override
+                    public void reset() {
+                        CacheMetrics.reset();
+                    }
+
+                    @Override
+                    public void clear() {
+                        Table.clearCaches();
+                    }
+                }, name);
+            }
+        } catch (JMException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    static void add(EntityCache<?> cache) {
+        caches.add(cache);
+    }
+
+    static List<EntityCache<?>> caches() {
+        return caches;
+    }
+
+    /**
+     * Gets the statistics of every entity cache, in the order they were
+     * created
+     *
+     * @return cache statistics
+     */
+    public static List<CacheStats> getCaches() {
+        List<CacheStats> stats = new ArrayList<>(caches.size());
+
+        for (EntityCache<?> cache : caches) {
+            stats.add(cache.stats());
+        }
+
+        return stats;
+    }
+
+    /**
+     * Gets the statistics of one entity cache
+     *
+     * @param name entity name, like product
+     * @return cache statistics or null if there is no such cache
+     */
+    public static CacheStats getCache(String name) {
+        EntityCache<?> cache = find(name);
+
+        return (cache == null) ? null : cache.stats();
+    }
+
+    static EntityCache<?> find(String name) {
+        for (EntityCache<?> cache : caches) {
+            if (cache.getName().equals(name)) {
+                return cache;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the share of lookups in any cache that found a cached entity
+     *
+     * @return hit ratio from 0 to 1
+     */
+    public static double getHitRatio() {
+        long hits = 0;
+        long requests = 0;
+
+        for (CacheStats stats : getCaches()) {
+            hits += stats.getHits();
+            requests += stats.getRequests();
+        }
+
+        return (requests == 0) ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Zeroes every cache's counters without dropping cached entities
+     */
+    public static void reset() {
+        for (EntityCache<?> cache : caches) {
+            cache.resetStats();
+        }
+    }
+
+    private static void log() {
+        StringBuilder line = new StringBuilder();
+
+        for (CacheStats stats : getCaches()) {
+            CacheStats previous = logged.put(stats.getName(), stats);
+
+            // Counters that went down were reset, so count from zero
+            boolean counting = previous != null && previous.getRequests() <= stats.getRequests();
+            long hits = stats.getHits() - (counting ? previous.getHits() : 0);
+            long requests = stats.getRequests() - (counting ? previous.getRequests() : 0);
+            long evictions = stats.getEvictions() - (counting && previous.getEvictions() <= stats.getEvictions() ? previous.getEvictions() : 0);
+
+            if (requests == 0) {
+                continue;
+            }
+
+            line.append((line.length() == 0) ? "" : ", ")
+                    .append(String.format("%s %.1f%% of %d (size %d, weight %d/%d, %d evictions)", stats.getName(),
+                            100.0 * hits / requests, requests, stats.getSize(), stats.getWeight(), stats.getMaxWeight(), evictions));
+        }
+
+        if (line.length() > 0) {
+            LOGGER.info("Entity cache hit ratios over the last " + LOG_INTERVAL_SECONDS + "s: " + line);
+        }
+    }
+}
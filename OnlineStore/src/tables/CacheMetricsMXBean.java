@@ -0,0 +1,20 @@
+package tables;
+
+import java.util.List;
+
+/**
+ * JMX view of the entity cache statistics, registered as
+ * tables:type=CacheMetrics
+ *
+ * @author karsten
+ */
+public interface CacheMetricsMXBean {
+
+    List<CacheStats> getCaches();
+
+    double getHitRatio();
+
+    void reset();
+
+    void clear();
+}
@@ -0,0 +1,136 @@
+package tables;
+
+/**
+ * Snapshot of one entity cache's counters since it was created or its
+ * statistics were last reset. Load times are in milliseconds.
+ *
+ * @author karsten
+ */
+public final class CacheStats {
+
+    private final String name;
+    private final long hits;
+    private final long misses;
+    private final long loads;
+    private final long loadFailures;
+    private final double totalLoadMillis;
+    private final long evictions;
+    private final long expirations;
+    private final long refreshes;
+    private final long refreshFailures;
+    private final long size;
+    private final long weight;
+    private final long maxWeight;
+
+    CacheStats(String name, long hits, long misses, long loads, long loadFailures, double totalLoadMillis,
+            long evictions, long expirations, long refreshes, long refreshFailures, long size, long weight, long maxWeight) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.loads = loads;
+        this.loadFailures = loadFailures;
+        this.totalLoadMillis = totalLoadMillis;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.refreshes = refreshes;
+        this.refreshFailures = refreshFailures;
+        this.size = size;
+        this.weight = weight;
+        this.maxWeight = maxWeight;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getRequests() {
+        return hits + misses;
+    }
+
+    /**
+     * Gets the share of lookups that found a cached entity
+     *
+     * @return hit ratio from 0 to 1, or 0 if nothing was looked up
+     */
+    public double getHitRatio() {
+        return (getRequests() == 0) ? 0 : (double) hits / getRequests();
+    }
+
+    /**
+     * Gets the number of entities loaded from storage after a miss, including
+     * loads that failed
+     *
+     * @return loads
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    public long getLoadFailures() {
+        return loadFailures;
+    }
+
+    public double getTotalLoadMillis() {
+        return totalLoadMillis;
+    }
+
+    public double getMeanLoadMillis() {
+        return (loads == 0) ? 0 : totalLoadMillis / loads;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of entries dropped because they outlived the time to
+     * live
+     *
+     * @return expirations
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * Gets the number of background reloads of entries close to expiring,
+     * which are also counted as loads
+     *
+     * @return refreshes
+     */
+    public long getRefreshes() {
+        return refreshes;
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: hits=%d, misses=%d, hitRatio=%.1f%%, loads=%d, loadFailures=%d, meanLoad=%.3fms, "
+                + "evictions=%d, expirations=%d, refreshes=%d, refreshFailures=%d, size=%d, weight=%d/%d",
+                name, hits, misses, getHitRatio() * 100, loads, loadFailures, getMeanLoadMillis(), evictions, expirations,
+                refreshes, refreshFailures, size, weight, maxWeight);
+    }
+}
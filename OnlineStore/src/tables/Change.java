@@ -0,0 +1,31 @@
+package tables;
+
+/**
+ * A write that may have made cached copies of an entity stale
+ *
+ * @author karsten
+ * @param entity name of the entity's cache, like product, or * for every
+ * entity
+ * @param id entity ID, ignored for every entity
+ */
+public record Change(String entity, int id) {
+
+    /**
+     * Entity name of a change that makes every cached entity stale
+     */
+    public static final String EVERYTHING = "*";
+
+    /**
+     * Gets a change that makes every cached entity stale, for example after
+     * changes may have been missed
+     *
+     * @return change
+     */
+    public static Change everything() {
+        return new Change(EVERYTHING, 0);
+    }
+
+    public boolean isEverything() {
+        return EVERYTHING.equals(entity);
+    }
+}
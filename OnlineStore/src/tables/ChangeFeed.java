@@ -0,0 +1,47 @@
+package tables;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Carries changes made to entities between the processes that cache them.
+ * Table publishes the entities each update, delete, and create changes, and
+ * drops its cached copy of every entity another process reports.
+ *
+ * @author karsten
+ */
+public interface ChangeFeed extends AutoCloseable {
+
+    /**
+     * Reports changes to subscribers. Feeds that can deliver them with the
+     * surrounding transaction do, so nothing is reported if it rolls back.
+     *
+     * @param changes changed entities
+     */
+    void publish(Collection<Change> changes);
+
+    /**
+     * Reports a change to subscribers
+     *
+     * @param change changed entity
+     * @see #publish(Collection)
+     */
+    default void publish(Change change) {
+        publish(List.of(change));
+    }
+
+    /**
+     * Registers a listener for the changes of other processes. Listeners may
+     * be called on the feed's own thread.
+     *
+     * @param listener called once per change
+     */
+    void subscribe(Consumer<Change> listener);
+
+    /**
+     * Stops delivering changes
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,388 @@
+package tables;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of database connections. Connections are validated when they
+ * are borrowed, replaced when they are found to be broken, and evicted after
+ * sitting idle for too long.
+ *
+ * @author karsten
+ */
+public final class ConnectionPool {
+
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long checkoutTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // Each permit is the right to hold one connection
+    private final Semaphore permits;
+    // Most recently returned connection is on top, guarded by itself
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a pool and opens its minimum number of connections
+     *
+     * @param url database url
+     * @param username username
+     * @param password password
+     * @param minSize connections kept open even when idle
+     * @param maxSize maximum connections open at once
+     * @param checkoutTimeoutMillis how long a caller waits for a connection
+     * @param idleTimeoutMillis how long an unused connection is kept open
+     * @param validationIntervalMillis connections idle for less than this are
+     * not validated on borrow
+     * @param validationTimeoutSeconds how long validation may take
+     * @param statementCacheSize prepared statements cached per connection
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+            long checkoutTimeoutMillis, long idleTimeoutMillis, long validationIntervalMillis, int validationTimeoutSeconds,
+            int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Pool size must satisfy 0 <= min <= max and max >= 1");
+        }
+
+        if (statementCacheSize < 1) {
+            throw new IllegalArgumentException("Statement cache size must be at least 1");
+        }
+
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        try {
+            // load the driver
+            Class.forName("org.postgresql.Driver");
+        } catch (ClassNotFoundException ex) {
+            throw new RuntimeException("Cannot load the driver");
+        }
+
+        for (int i = 0; i < minSize; i++) {
+            PooledConnection conn = open();
+
+            synchronized (idle) {
+                idle.push(conn);
+            }
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the checkout timeout for one to be
+     * returned if the pool is exhausted
+     *
+     * @return connection that must be closed to return it to the pool
+     */
+    PooledConnection borrow() {
+        if (closed) {
+            throw new RuntimeException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            if (!permits.tryAcquire(checkoutTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new RuntimeException("Timed out after " + checkoutTimeoutMillis + "ms waiting for a database connection");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a database connection");
+        }
+
+        long waited = System.nanoTime() - start;
+        borrows.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        try {
+            PooledConnection conn = takeIdle();
+
+            if (conn == null) {
+                conn = open();
+            }
+
+            active.incrementAndGet();
+            return conn;
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool
+     *
+     * @param conn connection
+     */
+    void release(PooledConnection conn) {
+        active.decrementAndGet();
+
+        if (closed || conn.isBroken()) {
+            discard(conn);
+        } else {
+            conn.touch();
+
+            synchronized (idle) {
+                idle.push(conn);
+            }
+        }
+
+        permits.release();
+    }
+
+    /**
+     * Takes the most recently used idle connection, replacing any that fail
+     * validation
+     *
+     * @return valid connection or null if there are no idle connections
+     */
+    private PooledConnection takeIdle() {
+        while (true) {
+            PooledConnection conn;
+
+            synchronized (idle) {
+                conn = idle.poll();
+            }
+
+            if (conn == null || isValid(conn)) {
+                return conn;
+            }
+
+            // Dropped connection, the caller will open a replacement
+            discard(conn);
+            reconnects.increment();
+        }
+    }
+
+    private boolean isValid(PooledConnection conn) {
+        if (conn.getIdleMillis() < validationIntervalMillis) {
+            return true;
+        }
+
+        try {
+            return conn.getConnection().isValid(validationTimeoutSeconds);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() {
+        try {
+            // connect to the database
+            Connection connection = DriverManager.getConnection(url, username, password);
+            open.incrementAndGet();
+
+            return new PooledConnection(this, connection, new StatementCache(connection, statementCacheSize, statementCounters));
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    private void discard(PooledConnection conn) {
+        open.decrementAndGet();
+        conn.closePhysical();
+    }
+
+    /**
+     * Closes connections that have been idle past the idle timeout while
+     * keeping the minimum pool size open
+     */
+    private void evictIdle() {
+        List<PooledConnection> expired = new ArrayList<>();
+
+        synchronized (idle) {
+            // Oldest connections are at the bottom of the stack
+            Iterator<PooledConnection> it = idle.descendingIterator();
+
+            while (it.hasNext() && open.get() - expired.size() > minSize) {
+                PooledConnection conn = it.next();
+
+                if (conn.getIdleMillis() < idleTimeoutMillis) {
+                    break;
+                }
+
+                it.remove();
+                expired.add(conn);
+            }
+        }
+
+        // Closed outside the lock, so a slow close doesn't hold up borrows
+        for (PooledConnection conn : expired) {
+            discard(conn);
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops handing out new ones. Borrowed
+     * connections are closed as they are returned.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+
+        List<PooledConnection> remaining;
+
+        synchronized (idle) {
+            remaining = new ArrayList<>(idle);
+            idle.clear();
+        }
+
+        for (PooledConnection conn : remaining) {
+            discard(conn);
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets how busy the pool is, counting borrowed connections and waiting
+     * callers
+     *
+     * @return active plus pending count
+     */
+    int getLoad() {
+        return getActiveCount() + getPendingCount();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the number of connections currently borrowed
+     *
+     * @return active connections
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Gets the number of open connections waiting in the pool
+     *
+     * @return idle connections
+     */
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /**
+     * Gets the number of callers blocked waiting for a connection
+     *
+     * @return waiting callers
+     */
+    public int getPendingCount() {
+        return permits.getQueueLength();
+    }
+
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    public long getBorrowCount() {
+        return borrows.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = borrows.sum();
+
+        return (count == 0) ? 0 : waitNanos.sum() / (double) count / 1_000_000;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getReconnectCount() {
+        return reconnects.sum();
+    }
+
+    public long getStatementCacheHitCount() {
+        return statementCounters.hits.sum();
+    }
+
+    public long getStatementCacheMissCount() {
+        return statementCounters.misses.sum();
+    }
+
+    public long getStatementCacheEvictionCount() {
+        return statementCounters.evictions.sum();
+    }
+
+    public double getStatementCacheHitRatio() {
+        long hits = getStatementCacheHitCount();
+        long total = hits + getStatementCacheMissCount();
+
+        return (total == 0) ? 0 : hits / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool{url=%s, active=%d, idle=%d, pending=%d, max=%d, borrows=%d, avgWait=%.3fms, maxWait=%.3fms, timeouts=%d, reconnects=%d, statementHitRatio=%.3f}",
+                url, getActiveCount(), getIdleCount(), getPendingCount(), maxSize, getBorrowCount(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getTimeoutCount(), getReconnectCount(), getStatementCacheHitRatio());
+    }
+}
@@ -0,0 +1,141 @@
+package tables;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Walks a forward-only database cursor one row at a time. The cursor is opened
+ * inside a transaction, its own unless one is already open, so the driver
+ * fetches rows in batches instead of loading the whole result. The borrowed
+ * connection is held until the cursor is closed or runs out of rows.
+ *
+ * @author karsten
+ */
+final class CursorSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+
+    private final PooledConnection conn;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final Function<ResultSet, T> func;
+
+    private boolean closed = false;
+
+    private CursorSpliterator(PooledConnection conn, PreparedStatement ps, ResultSet rs, Function<ResultSet, T> func) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+
+        this.conn = conn;
+        this.ps = ps;
+        this.rs = rs;
+        this.func = func;
+    }
+
+    /**
+     * Opens a cursor over the query
+     *
+     * @param <T> type each row is mapped to
+     * @param query select query
+     * @param fetchSize rows fetched from the database per round trip
+     * @param func maps the current row
+     * @param arguments query arguments
+     * @return open cursor
+     */
+    static <T> CursorSpliterator<T> open(String query, int fetchSize, Function<ResultSet, T> func, Object... arguments) {
+        PooledConnection conn = DatabaseManager.getReadConnection();
+        PreparedStatement ps = null;
+
+        try {
+            Connection connection = conn.getConnection();
+
+            // The driver only uses a cursor outside of autocommit
+            if (!conn.isPinned()) {
+                connection.setAutoCommit(false);
+            }
+
+            ps = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+
+            // Adds all arguments to the query
+            for (int i = 0; i < arguments.length; i++) {
+                ps.setObject(i + 1, arguments[i]);
+            }
+
+            return new CursorSpliterator<>(conn, ps, ps.executeQuery(), func);
+        } catch (SQLException ex) {
+            conn.checkBroken(ex);
+            release(conn, ps);
+
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            if (!rs.next()) {
+                close();
+                return false;
+            }
+        } catch (SQLException ex) {
+            conn.checkBroken(ex);
+            close();
+
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        action.accept(func.apply(rs));
+
+        return true;
+    }
+
+    /**
+     * Closes the cursor and returns its connection to the pool
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            rs.close();
+        } catch (SQLException ex) {
+            // Statement is closed below anyway
+        }
+
+        release(conn, ps);
+    }
+
+    private static void release(PooledConnection conn, PreparedStatement ps) {
+        try {
+            if (ps != null) {
+                ps.close();
+            }
+
+            // Read only, so nothing needs to be kept. A surrounding
+            // transaction is left for its owner to finish.
+            if (!conn.isPinned()) {
+                conn.getConnection().rollback();
+                conn.getConnection().setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            // Don't hand out a connection stuck in a transaction
+            conn.markBroken();
+        }
+
+        conn.close();
+    }
+}
@@ -1,53 +1,190 @@
 package tables;
 
-import java.sql.*;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Class for managing database connection throughout the project
+ * Class for managing database connections throughout the project. Writes go to
+ * the primary database and selects can be spread over read replicas listed in
+ * onlinestore.db.replicas. Pool sizing can be changed with the
+ * onlinestore.pool.* system properties.
  *
  * @author karsten
  */
-class DatabaseManager {
+public class DatabaseManager {
 
-    private static final String URL = "jdbc:postgresql://localhost:5432/onlinestore";
-    private static final String USERNAME = "postgres";
-    private static final String PASSWORD = "password";
+    /**
+     * How selects pick a read replica
+     */
+    public enum ReplicaSelection {
+        ROUND_ROBIN,
+        LEAST_LOADED
+    }
+
+    private static final String URL = System.getProperty("onlinestore.db.url", "jdbc:postgresql://localhost:5432/onlinestore");
+    private static final String REPLICA_URLS = System.getProperty("onlinestore.db.replicas", "");
+    private static final String USERNAME = System.getProperty("onlinestore.db.username", "postgres");
+    private static final String PASSWORD = System.getProperty("onlinestore.db.password", "password");
 
-    private static Connection connection;
+    private static final ReplicaSelection REPLICA_SELECTION
+            = ReplicaSelection.valueOf(System.getProperty("onlinestore.db.replicaSelection", "ROUND_ROBIN").toUpperCase());
+    // Reads this soon after a write on the same thread go to the primary so
+    // they see the write even if the replicas are behind
+    private static final long READ_AFTER_WRITE_MILLIS = Long.getLong("onlinestore.db.readAfterWriteWindow", 2_000);
+
+    private static final int MIN_POOL_SIZE = Integer.getInteger("onlinestore.pool.minSize", 1);
+    private static final int MAX_POOL_SIZE = Integer.getInteger("onlinestore.pool.maxSize", 10);
+    private static final long CHECKOUT_TIMEOUT_MILLIS = Long.getLong("onlinestore.pool.checkoutTimeout", 30_000);
+    private static final long IDLE_TIMEOUT_MILLIS = Long.getLong("onlinestore.pool.idleTimeout", 600_000);
+    private static final long VALIDATION_INTERVAL_MILLIS = Long.getLong("onlinestore.pool.validationInterval", 1_000);
+    private static final int VALIDATION_TIMEOUT_SECONDS = Integer.getInteger("onlinestore.pool.validationTimeout", 2);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("onlinestore.pool.statementCacheSize", 100);
+
+    private static final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+
+    private static volatile ConnectionPool pool;
+    private static volatile List<ConnectionPool> replicas = List.of();
 
     /**
-     * Gets the universal database connection for the project
+     * Borrows a connection to the primary database. Closing the returned
+     * connection gives it back to the pool. Inside a transaction this is the
+     * transaction's connection.
      *
-     * @return database connection
+     * @return pooled database connection
      */
-    public static Connection getConnection() {
-        if (connection == null) {
-            setConnection();
+    static PooledConnection getConnection() {
+        PooledConnection pinned = Transaction.pinnedConnection();
+
+        if (pinned != null) {
+            return pinned;
         }
 
-        return connection;
+        return getPool().borrow();
     }
 
     /**
-     * Connects to the universal database for the project. Provides the
-     * connection its URL, username, and password credentials
+     * Borrows a connection for a read. Reads go to a replica unless there are
+     * none, a transaction is open, or this thread wrote recently.
+     *
+     * @return pooled database connection
      */
-    private static void setConnection() {
+    static PooledConnection getReadConnection() {
+        List<ConnectionPool> candidates = getReplicaPools();
+
+        if (candidates.isEmpty() || Transaction.isActive() || wroteRecently()) {
+            return getConnection();
+        }
+
+        ConnectionPool replica = selectReplica(candidates);
+
         try {
-            // load the driver
-            Class.forName("org.postgresql.Driver");
-            // connect to the database
-            connection = 
-                    DriverManager.getConnection(URL, USERNAME, PASSWORD);
-           
+            return replica.borrow();
+        } catch (RuntimeException ex) {
+            // Replica is unreachable or saturated, the primary can still answer
+            return getConnection();
+        }
+    }
+
+    private static ConnectionPool selectReplica(List<ConnectionPool> candidates) {
+        if (REPLICA_SELECTION == ReplicaSelection.ROUND_ROBIN) {
+            return candidates.get(Math.floorMod(nextReplica.getAndIncrement(), candidates.size()));
+        }
+
+        ConnectionPool best = candidates.getFirst();
+
+        for (ConnectionPool candidate : candidates) {
+            if (candidate.getLoad() < best.getLoad()) {
+                best = candidate;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Records that the current thread wrote to the primary
+     */
+    static void markWrite() {
+        if (!replicas.isEmpty()) {
+            lastWrite.set(System.nanoTime());
+        }
+    }
+
+    private static boolean wroteRecently() {
+        Long time = lastWrite.get();
+
+        return time != null && (System.nanoTime() - time) / 1_000_000 < READ_AFTER_WRITE_MILLIS;
+    }
+
+    /**
+     * Gets the primary database's connection pool, creating the pools on first
+     * use
+     *
+     * @return connection pool
+     */
+    public static ConnectionPool getPool() {
+        if (pool == null) {
+            setPool();
         }
-        catch (ClassNotFoundException e) {
-            System.out.println("Cannot load the driver");
-            e.printStackTrace();
+
+        return pool;
+    }
+
+    /**
+     * Gets the read replicas' connection pools
+     *
+     * @return replica pools, empty if there are no replicas
+     */
+    public static List<ConnectionPool> getReplicaPools() {
+        if (pool == null) {
+            setPool();
         }
-        catch (SQLException e) {
-            System.out.println("Got a SQL exception.");
-            e.printStackTrace();
+
+        return replicas;
+    }
+
+    /**
+     * Creates the project's connection pools. Provides each pool its URL,
+     * username, and password credentials
+     */
+    private static synchronized void setPool() {
+        if (pool != null) {
+            return;
         }
+
+        List<ConnectionPool> replicaPools = new ArrayList<>();
+
+        for (String url : REPLICA_URLS.split(",")) {
+            if (!url.isBlank()) {
+                replicaPools.add(createPool(url.trim()));
+            }
+        }
+
+        replicas = Collections.unmodifiableList(replicaPools);
+        pool = createPool(URL);
+    }
+
+    /**
+     * Opens a connection to the primary database outside the pool, for work
+     * that holds a connection for the life of the process, like listening for
+     * notifications. The caller closes it.
+     *
+     * @return database connection
+     * @throws SQLException the database can't be reached
+     */
+    static Connection openDedicatedConnection() throws SQLException {
+        return DriverManager.getConnection(URL, USERNAME, PASSWORD);
+    }
+
+    private static ConnectionPool createPool(String url) {
+        return new ConnectionPool(url, USERNAME, PASSWORD, MIN_POOL_SIZE, MAX_POOL_SIZE,
+                CHECKOUT_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS, VALIDATION_INTERVAL_MILLIS, VALIDATION_TIMEOUT_SECONDS,
+                STATEMENT_CACHE_SIZE);
     }
 }
@@ -0,0 +1,618 @@
+package tables;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded cache of entities by ID. Entries have a weight, 1 unless the cache
+ * was given a weigher, and once the cache is heavier than its maximum the
+ * eviction policy drops entries until it fits again.
+ * <p>
+ * Entries may also have a time to live, after which they are never returned.
+ * An entry read late in its life is reloaded in the background, so entities
+ * that are used all the time stay fresh without any reader waiting for a
+ * load. The age of an entry counts from when its load started, so no reader
+ * sees data older than the time to live.
+ * <p>
+ * The cache is split into segments by ID, each with its own lock and policy,
+ * so threads working on different entities rarely wait for each other. Values
+ * are loaded outside the lock, so a load may fetch related entities from
+ * other caches, or from this one, without deadlocking. A load that was running
+ * while its segment dropped an entry isn't cached, as it may have read the row
+ * before the change that dropped it.
+ *
+ * @author karsten
+ * @param <T> entity type
+ */
+public final class EntityCache<T> {
+
+    /**
+     * How a full cache picks the entry to drop
+     */
+    public enum Eviction {
+        /**
+         * Least recently used
+         */
+        LRU,
+        /**
+         * Window TinyLFU, which keeps frequently used entries through scans
+         */
+        TINY_LFU;
+
+        EvictionPolicy createPolicy(long maxWeight) {
+            return (this == LRU) ? new LruPolicy() : new TinyLfuPolicy(maxWeight);
+        }
+    }
+
+    private static final int MAX_SEGMENTS = 16;
+    // Segments are only split off while each keeps at least this much weight
+    private static final int MIN_SEGMENT_WEIGHT = 256;
+
+    private final String name;
+    private final long maxWeight;
+    private final Eviction eviction;
+    private final ToIntFunction<? super T> weigher;
+    // 0 when entries never expire
+    private final long timeToLiveNanos;
+    // Age after which a read reloads the entry in the background, 0 for never
+    private final long refreshAfterNanos;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    /**
+     * Cached value and when its load started
+     */
+    private static final class Node<T> {
+
+        private final T value;
+        private final long loadedAt;
+        // Guarded by the segment's lock
+        private boolean refreshing = false;
+
+        Node(T value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Creates an empty cache whose entries never expire
+     *
+     * @param name entity name, used in diagnostics
+     * @param maxWeight maximum total weight
+     * @param eviction how entries are picked for eviction
+     * @param weigher weight of an entry, at least 1, or null to weigh every
+     * entry 1
+     */
+    public EntityCache(String name, long maxWeight, Eviction eviction, ToIntFunction<? super T> weigher) {
+        this(name, maxWeight, eviction, weigher, Duration.ZERO, Duration.ZERO);
+    }
+
+    /**
+     * Creates an empty cache
+     *
+     * @param name entity name, used in diagnostics
+     * @param maxWeight maximum total weight
+     * @param eviction how entries are picked for eviction
+     * @param weigher weight of an entry, at least 1, or null to weigh every
+     * entry 1
+     * @param timeToLive how long an entry may be returned after its load
+     * started, zero for forever
+     * @param refreshAhead how long before it expires a read reloads an entry
+     * in the background, zero to never refresh
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public EntityCache(String name, long maxWeight, Eviction eviction, ToIntFunction<? super T> weigher,
+            Duration timeToLive, Duration refreshAhead) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Cache " + name + " needs a maximum weight of at least 1");
+        }
+
+        if (timeToLive.isNegative() || refreshAhead.isNegative() || refreshAhead.compareTo(timeToLive) > 0) {
+            throw new IllegalArgumentException("Cache " + name + " needs 0 <= refresh ahead <= time to live");
+        }
+
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.eviction = eviction;
+        this.weigher = weigher;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.refreshAfterNanos = refreshAhead.isZero() ? 0 : Math.max(1, timeToLiveNanos - refreshAhead.toNanos());
+
+        int count = 1;
+
+        while (count < MAX_SEGMENTS && maxWeight / (count * 2) >= MIN_SEGMENT_WEIGHT) {
+            count *= 2;
+        }
+
+        long segmentWeight = (maxWeight + count - 1) / count;
+        segments = new EntityCache.Segment[count];
+
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(eviction.createPolicy(segmentWeight), segmentWeight);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    public Duration getTimeToLive() {
+        return Duration.ofNanos(timeToLiveNanos);
+    }
+
+    /**
+     * Gets a cached entity
+     *
+     * @param id id
+     * @return entity, or null if it isn't cached or has expired
+     */
+    public T get(int id) {
+        Node<T> node = segment(id).get(id, System.nanoTime());
+
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+
+        return node.value;
+    }
+
+    /**
+     * Gets a cached entity, loading and caching it if it isn't cached or has
+     * expired. An entity close to expiring is returned as is and reloaded in
+     * the background. Two threads missing the same ID at once may both load
+     * it.
+     *
+     * @param id id
+     * @param loader loads the entity, may throw if it doesn't exist
+     * @return entity
+     */
+    public T get(int id, IntFunction<? extends T> loader) {
+        Segment segment = segment(id);
+        long now = System.nanoTime();
+        Node<T> node = segment.get(id, now);
+
+        if (node != null) {
+            hits.increment();
+
+            if (refreshAfterNanos > 0 && now - node.loadedAt >= refreshAfterNanos && segment.startRefresh(node)) {
+                refresh(id, node, loader);
+            }
+
+            return node.value;
+        }
+
+        misses.increment();
+
+        long stamp = segment.stamp();
+        T value;
+
+        try {
+            value = loader.apply(id);
+        } catch (RuntimeException ex) {
+            loadFailures.increment();
+            throw ex;
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - now);
+        }
+
+        if (value != null) {
+            segment.putIfUnchanged(id, new Node<>(value, now), weigh(value), stamp);
+        }
+
+        return value;
+    }
+
+    /**
+     * Gets many entities, loading every one that isn't cached or has expired
+     * with one call of the loader. Entries close to expiring are returned
+     * without a refresh.
+     *
+     * @param ids ids, may repeat
+     * @param loader loads the entities of the IDs it is given, leaving out
+     * the ones that don't exist
+     * @return entities in the order of the IDs, without the ones that don't
+     * exist
+     */
+    public List<T> getAll(Collection<Integer> ids, Function<? super List<Integer>, ? extends Map<Integer, ? extends T>> loader) {
+        long now = System.nanoTime();
+        Map<Integer, T> found = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+
+        for (int id : ids) {
+            if (found.containsKey(id) || missing.contains(id)) {
+                continue;
+            }
+
+            Node<T> node = segment(id).get(id, now);
+
+            if (node == null) {
+                misses.increment();
+                missing.add(id);
+            } else {
+                hits.increment();
+                found.put(id, node.value);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            long[] stamps = new long[segments.length];
+
+            for (int i = 0; i < segments.length; i++) {
+                stamps[i] = segments[i].stamp();
+            }
+
+            Map<Integer, ? extends T> loaded;
+
+            try {
+                loaded = loader.apply(new ArrayList<>(missing));
+            } catch (RuntimeException ex) {
+                loadFailures.increment();
+                throw ex;
+            } finally {
+                loads.add(missing.size());
+                loadNanos.add(System.nanoTime() - now);
+            }
+
+            for (Map.Entry<Integer, ? extends T> entry : loaded.entrySet()) {
+                T value = entry.getValue();
+
+                int index = segmentIndex(entry.getKey());
+
+                segments[index].putIfUnchanged(entry.getKey(), new Node<>(value, now), weigh(value), stamps[index]);
+                found.put(entry.getKey(), value);
+            }
+        }
+
+        List<T> result = new ArrayList<>(ids.size());
+
+        for (int id : ids) {
+            T value = found.get(id);
+
+            if (value != null) {
+                result.add(value);
+            }
+        }
+
+        return result;
+    }
+
+    private void refresh(int id, Node<T> node, IntFunction<? extends T> loader) {
+        refreshes.increment();
+
+        long start = System.nanoTime();
+
+        AsyncExecutor.supply(() -> loader.apply(id)).whenComplete((value, ex) -> {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - start);
+
+            if (ex != null || value == null) {
+                refreshFailures.increment();
+                loadFailures.increment();
+                segment(id).endRefresh(node);
+                return;
+            }
+
+            // Dropped if the entry was removed or replaced while reloading
+            segment(id).replace(id, node, new Node<>(value, start), weigh(value));
+        });
+    }
+
+    /**
+     * Caches an entity, evicting others if the cache is too heavy
+     *
+     * @param id id
+     * @param value entity
+     */
+    public void put(int id, T value) {
+        segment(id).put(id, new Node<>(value, System.nanoTime()), weigh(value));
+    }
+
+    /**
+     * Drops an entity, for example because it was deleted
+     *
+     * @param id id
+     */
+    public void remove(int id) {
+        segment(id).remove(id);
+    }
+
+    /**
+     * Drops every entity
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Gets the number of cached entities, including expired ones that have
+     * not been dropped yet
+     */
+    public long size() {
+        long size = 0;
+
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Gets the total weight of the cached entities
+     */
+    public long weight() {
+        long weight = 0;
+
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+
+        return weight;
+    }
+
+    /**
+     * Gets a snapshot of the cache's counters
+     *
+     * @return statistics
+     */
+    public CacheStats stats() {
+        return new CacheStats(name, hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), loadNanos.sum() / 1_000_000.0,
+                evictions.sum(), expirations.sum(), refreshes.sum(), refreshFailures.sum(), size(), weight(), maxWeight);
+    }
+
+    /**
+     * Zeroes the counters without dropping cached entities
+     */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        loads.reset();
+        loadFailures.reset();
+        loadNanos.reset();
+        evictions.reset();
+        expirations.reset();
+        refreshes.reset();
+        refreshFailures.reset();
+    }
+
+    private int weigh(T value) {
+        return (weigher == null) ? 1 : Math.max(1, weigher.applyAsInt(value));
+    }
+
+    private Segment segment(int id) {
+        return segments[segmentIndex(id)];
+    }
+
+    private int segmentIndex(int id) {
+        // Spread sequential IDs over every segment
+        int hash = id * 0x9E3779B9;
+
+        return (hash ^ (hash >>> 16)) & (segments.length - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{" + "name=" + name + ", size=" + size() + ", weight=" + weight() + ", maxWeight=" + maxWeight
+                + ", eviction=" + eviction + ", timeToLive=" + getTimeToLive() + '}';
+    }
+
+    private final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final HashMap<Integer, Node<T>> nodes = new HashMap<>();
+        private final EvictionPolicy policy;
+        private final long maxWeight;
+        // Counts removals, so a load can tell whether one happened meanwhile
+        private long invalidations = 0;
+
+        Segment(EvictionPolicy policy, long maxWeight) {
+            this.policy = policy;
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * Gets a live entry, dropping it if it has expired
+         */
+        Node<T> get(int id, long now) {
+            lock.lock();
+
+            try {
+                Node<T> node = nodes.get(id);
+
+                if (node == null) {
+                    return null;
+                }
+
+                if (timeToLiveNanos > 0 && now - node.loadedAt >= timeToLiveNanos) {
+                    nodes.remove(id);
+                    policy.onRemove(id);
+                    expirations.increment();
+                    return null;
+                }
+
+                policy.onAccess(id);
+
+                return node;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Claims an entry's refresh
+         *
+         * @return whether no other refresh of it is running
+         */
+        boolean startRefresh(Node<T> node) {
+            lock.lock();
+
+            try {
+                if (node.refreshing) {
+                    return false;
+                }
+
+                node.refreshing = true;
+
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void endRefresh(Node<T> node) {
+            lock.lock();
+
+            try {
+                node.refreshing = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(int id, Node<T> node, int weight) {
+            lock.lock();
+
+            try {
+                if (nodes.put(id, node) == null) {
+                    policy.onInsert(id, weight);
+                } else {
+                    policy.onUpdate(id, weight);
+                }
+
+                while (policy.weight() > maxWeight) {
+                    nodes.remove(policy.evict());
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gets the stamp to take before a load, for putIfUnchanged
+         */
+        long stamp() {
+            lock.lock();
+
+            try {
+                return invalidations;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Caches a loaded entry, unless an entry of the segment was removed
+         * since the stamp was taken
+         */
+        void putIfUnchanged(int id, Node<T> node, int weight, long stamp) {
+            lock.lock();
+
+            try {
+                if (invalidations == stamp) {
+                    put(id, node, weight);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Replaces an entry with its reloaded value, unless it changed since
+         * the reload started
+         */
+        void replace(int id, Node<T> old, Node<T> node, int weight) {
+            lock.lock();
+
+            try {
+                if (nodes.get(id) == old) {
+                    put(id, node, weight);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(int id) {
+            lock.lock();
+
+            try {
+                // Counted even when it isn't cached, as a load may be running
+                invalidations++;
+
+                if (nodes.remove(id) != null) {
+                    policy.onRemove(id);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+
+            try {
+                invalidations++;
+                nodes.clear();
+                policy.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+
+            try {
+                return nodes.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long weight() {
+            lock.lock();
+
+            try {
+                return policy.weight();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package tables;
+
+/**
+ * Decides which entry an EntityCache segment drops when it is over its
+ * maximum weight. Policies only see keys and weights, the values stay in the
+ * segment. Calls are made under the segment's lock.
+ *
+ * @author karsten
+ */
+interface EvictionPolicy {
+
+    /**
+     * Records a hit on a cached key
+     */
+    void onAccess(int key);
+
+    /**
+     * Records a key that was just added
+     */
+    void onInsert(int key, int weight);
+
+    /**
+     * Records a cached key whose value was replaced
+     */
+    void onUpdate(int key, int weight);
+
+    /**
+     * Forgets a key that was removed from the cache
+     */
+    void onRemove(int key);
+
+    /**
+     * Picks an entry to drop and forgets it. Only called while some key is
+     * tracked.
+     *
+     * @return key to drop
+     */
+    int evict();
+
+    /**
+     * Gets the weight of every tracked key
+     */
+    long weight();
+
+    /**
+     * Forgets every key
+     */
+    void clear();
+}
@@ -0,0 +1,84 @@
+package tables;
+
+/**
+ * Approximate count of how often each key was used recently: a count-min
+ * sketch of 4-bit counters. Every counter is halved once a sample's worth of
+ * uses has been counted, so old popularity fades.
+ *
+ * @author karsten
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97CB3127, 0xB1ED6C65, 0x8F2B83A1, 0xC5A2D4A7};
+
+    private final byte[] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    /**
+     * Creates a sketch sized for the given number of keys
+     *
+     * @param expectedKeys keys the cache holds at most
+     */
+    FrequencySketch(long expectedKeys) {
+        int size = (int) Math.min(1 << 24, Math.max(16, expectedKeys * 2));
+        size = Integer.highestOneBit(size - 1) << 1;
+
+        counters = new byte[size];
+        mask = size - 1;
+        sampleSize = (int) Math.min(1 << 30, Math.max(16, expectedKeys * 10));
+    }
+
+    /**
+     * Gets how often a key was used, at most 15
+     */
+    int frequency(int key) {
+        int frequency = MAX_COUNT;
+
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counters[index(key, i)]);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Counts a use of a key
+     */
+    void increment(int key) {
+        int frequency = frequency(key);
+
+        if (frequency == MAX_COUNT) {
+            return;
+        }
+
+        // Only the smallest counters grow, which keeps collisions from
+        // inflating the estimate
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = index(key, i);
+
+            if (counters[index] == frequency) {
+                counters[index]++;
+            }
+        }
+
+        if (++additions == sampleSize) {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>= 1;
+            }
+
+            additions /= 2;
+        }
+    }
+
+    private int index(int key, int i) {
+        int hash = (key ^ SEEDS[i]) * 0x9E3779B9;
+        hash ^= hash >>> 15;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+
+        return hash & mask;
+    }
+}
@@ -0,0 +1,235 @@
+package tables;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Storage engine that runs every statement on PostgreSQL through the
+ * connections of DatabaseManager
+ *
+ * @author karsten
+ */
+final class JdbcEngine implements StorageEngine {
+
+    private static final RowSetFactory ROW_SET_FACTORY;
+
+    static {
+        try {
+            ROW_SET_FACTORY = RowSetProvider.newFactory();
+        } catch (SQLException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    @Override
+    public CachedRowSet select(String query, Object... arguments) {
+        try (PooledConnection conn = DatabaseManager.getReadConnection()) {
+            try {
+                PreparedStatement ps = conn.prepareStatement(query);
+
+                // Adds all arguments to the query
+                Table.setArguments(ps, arguments);
+
+                // Copy the rows out so the connection can go back to the pool
+                CachedRowSet rs = ROW_SET_FACTORY.createCachedRowSet();
+
+                try (ResultSet results = ps.executeQuery()) {
+                    rs.populate(results);
+                }
+
+                return rs;
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public <T> Stream<T> stream(String query, int fetchSize, Function<ResultSet, T> func, Object... arguments) {
+        CursorSpliterator<T> cursor = CursorSpliterator.open(query, fetchSize, func, arguments);
+
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    @Override
+    public int execute(String query, Object... arguments) {
+        try (PooledConnection conn = DatabaseManager.getConnection()) {
+            try {
+                PreparedStatement ps = conn.prepareStatement(query);
+
+                // Adds all arguments to the query
+                Table.setArguments(ps, arguments);
+
+                // Execute the update query
+                int rowsAffected = ps.executeUpdate();
+                DatabaseManager.markWrite();
+
+                return rowsAffected;
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public int[] executeBatch(String query, List<Object[]> rows) {
+        try (PooledConnection conn = DatabaseManager.getConnection()) {
+            try {
+                PreparedStatement ps = conn.prepareStatement(query);
+
+                // Drop anything left over from a failed batch
+                ps.clearBatch();
+
+                for (Object[] arguments : rows) {
+                    Table.setArguments(ps, arguments);
+                    ps.addBatch();
+                }
+
+                int[] counts = ps.executeBatch();
+                DatabaseManager.markWrite();
+
+                return counts;
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public int insert(String query, Object... arguments) {
+        try (PooledConnection conn = DatabaseManager.getConnection()) {
+            try {
+                PreparedStatement ps = conn.prepareStatement(query, PreparedStatement.RETURN_GENERATED_KEYS);
+
+                // Adds all arguments to the query
+                Table.setArguments(ps, arguments);
+
+                // Execute the update query
+                int rowsAffected = ps.executeUpdate();
+                DatabaseManager.markWrite();
+
+                if (rowsAffected == 1) {
+                    try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            return generatedKeys.getInt(1);
+                        }
+                    }
+                }
+
+                throw new IllegalArgumentException("More than one entity was updated/inserted");
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public <T> List<T> insertBatch(String query, List<Object[]> rows, Function<ResultSet, T> func) {
+        List<T> result = new ArrayList<>(rows.size());
+
+        try (PooledConnection conn = DatabaseManager.getConnection()) {
+            try {
+                PreparedStatement ps = conn.prepareStatement(query, PreparedStatement.RETURN_GENERATED_KEYS);
+
+                // Drop anything left over from a failed batch
+                ps.clearBatch();
+
+                for (int offset = 0; offset < rows.size(); offset += Table.BATCH_SIZE) {
+                    for (Object[] arguments : rows.subList(offset, Math.min(rows.size(), offset + Table.BATCH_SIZE))) {
+                        // Adds all arguments to the query
+                        Table.setArguments(ps, arguments);
+                        ps.addBatch();
+                    }
+
+                    ps.executeBatch();
+                    DatabaseManager.markWrite();
+
+                    // Keys come back in the order the rows were added
+                    try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                        while (generatedKeys.next()) {
+                            result.add(func.apply(generatedKeys));
+                        }
+                    }
+                }
+
+                if (result.size() != rows.size()) {
+                    throw new IllegalArgumentException("Not every row was inserted");
+                }
+
+                return result;
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public <T> T inTransaction(Callable<T> work) {
+        return Transaction.call(work);
+    }
+
+    @Override
+    public long copyIn(String query, Reader reader) {
+        try (PooledConnection conn = DatabaseManager.getConnection()) {
+            try {
+                CopyManager copy = conn.getConnection().unwrap(PGConnection.class).getCopyAPI();
+                long rows = copy.copyIn(query, reader);
+                DatabaseManager.markWrite();
+
+                return rows;
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            } catch (IOException ex) {
+                // The copy was cut off, so the connection's state is unknown
+                conn.markBroken();
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public long copyOut(String query, OutputStream out) {
+        try (PooledConnection conn = DatabaseManager.getReadConnection()) {
+            try {
+                CopyManager copy = conn.getConnection().unwrap(PGConnection.class).getCopyAPI();
+
+                return copy.copyOut(query, out);
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            } catch (IOException ex) {
+                // The copy was cut off, so the connection's state is unknown
+                conn.markBroken();
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+}
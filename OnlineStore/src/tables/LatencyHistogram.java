@@ -0,0 +1,108 @@
+package tables;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in the style of HdrHistogram. Each power of two
+ * range is split into 16 linear buckets, so any recorded value is reported
+ * within about 6% of its real value while the histogram stays a fixed few
+ * kilobytes. Values are in nanoseconds.
+ *
+ * @author karsten
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values up to 2^40 ns (about 18 minutes) get their own bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+
+        counts.incrementAndGet(indexOf(value));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int index = (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /**
+     * Gets the largest value that falls in the bucket
+     */
+    private static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long top = index % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Gets the value at or below which the given fraction of recorded values
+     * fall
+     *
+     * @param fraction fraction between 0 and 1
+     * @return value in nanoseconds, 0 if nothing was recorded
+     */
+    public long percentile(double fraction) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+
+            if (seen >= target) {
+                // Never report more than was actually seen
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+
+        max.set(0);
+    }
+}
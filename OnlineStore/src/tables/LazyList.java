@@ -0,0 +1,129 @@
+package tables;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * List of related entities that loads them the first time it is read, all
+ * with one call of the loader, usually an entity's fromIDs. Until then it only
+ * holds their IDs, so its size is known without loading anything. Repeated
+ * IDs, as joins return them, are kept once. Once loaded it behaves like an
+ * ArrayList.
+ *
+ * @author karsten
+ * @param <T> entity type
+ */
+public final class LazyList<T> extends AbstractList<T> implements RandomAccess {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Integer> ids;
+    private final Function<? super List<Integer>, ? extends List<T>> loader;
+
+    private volatile List<T> values;
+
+    /**
+     * Creates a list that is loaded when it is first read
+     *
+     * @param ids IDs of the entities, in list order, may repeat
+     * @param loader loads the entities of the IDs
+     */
+    public LazyList(Collection<Integer> ids, Function<? super List<Integer>, ? extends List<T>> loader) {
+        this.ids = List.copyOf(new LinkedHashSet<>(ids));
+        this.loader = loader;
+    }
+
+    /**
+     * Gets whether the entities were loaded
+     *
+     * @return loaded
+     */
+    public boolean isLoaded() {
+        return values != null;
+    }
+
+    private List<T> values() {
+        List<T> loaded = values;
+
+        if (loaded != null) {
+            return loaded;
+        }
+
+        // Not synchronized, which would pin a virtual thread while it loads
+        lock.lock();
+
+        try {
+            if (values == null) {
+                values = new ArrayList<>(loader.apply(ids));
+            }
+
+            return values;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of entities, which before loading is the number of IDs
+     */
+    @Override
+    public int size() {
+        List<T> loaded = values;
+
+        return (loaded == null) ? ids.size() : loaded.size();
+    }
+
+    @Override
+    public T get(int index) {
+        return values().get(index);
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return values().set(index, element);
+    }
+
+    @Override
+    public boolean add(T element) {
+        boolean added = values().add(element);
+        modCount++;
+
+        return added;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        values().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        T removed = values().remove(index);
+        modCount++;
+
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        values().clear();
+        modCount++;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return values().iterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return values().toArray();
+    }
+}
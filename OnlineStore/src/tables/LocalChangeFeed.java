@@ -0,0 +1,44 @@
+package tables;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Change feed that stays in this process, for tests and single process runs.
+ * Every published change is delivered to every subscriber right away on the
+ * publishing thread, as if another process had made it, so the entity caches
+ * drop their copies of whatever this process writes.
+ *
+ * @author karsten
+ */
+public final class LocalChangeFeed implements ChangeFeed {
+
+    private final List<Consumer<Change>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    @Override
+    public void publish(Collection<Change> changes) {
+        if (closed) {
+            return;
+        }
+
+        for (Change change : changes) {
+            for (Consumer<Change> listener : listeners) {
+                listener.accept(change);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Change> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        listeners.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package tables;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Drops the least recently used entry
+ *
+ * @author karsten
+ */
+final class LruPolicy implements EvictionPolicy {
+
+    // Weight of each key, least recently used first
+    private final LinkedHashMap<Integer, Integer> keys = new LinkedHashMap<>();
+    private long weight = 0;
+
+    @Override
+    public void onAccess(int key) {
+        Integer keyWeight = keys.get(key);
+
+        if (keyWeight != null) {
+            keys.putLast(key, keyWeight);
+        }
+    }
+
+    @Override
+    public void onInsert(int key, int weight) {
+        keys.putLast(key, weight);
+        this.weight += weight;
+    }
+
+    @Override
+    public void onUpdate(int key, int weight) {
+        onRemove(key);
+        onInsert(key, weight);
+    }
+
+    @Override
+    public void onRemove(int key) {
+        Integer keyWeight = keys.remove(key);
+
+        if (keyWeight != null) {
+            weight -= keyWeight;
+        }
+    }
+
+    @Override
+    public int evict() {
+        var eldest = keys.pollFirstEntry();
+        weight -= eldest.getValue();
+
+        return eldest.getKey();
+    }
+
+    @Override
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public void clear() {
+        keys.clear();
+        weight = 0;
+    }
+}
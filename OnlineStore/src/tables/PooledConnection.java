@@ -0,0 +1,114 @@
+package tables;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Connection borrowed from a ConnectionPool. Closing it returns the underlying
+ * connection to the pool instead of closing it. Statements prepared through it
+ * are cached with the connection and must not be closed by the caller.
+ *
+ * @author karsten
+ */
+final class PooledConnection implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final StatementCache statements;
+
+    private long lastUsed = System.nanoTime();
+    private boolean broken = false;
+    private boolean pinned = false;
+
+    PooledConnection(ConnectionPool pool, Connection connection, StatementCache statements) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statements = statements;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    PreparedStatement prepareStatement(String query) throws SQLException {
+        return statements.prepare(query, Statement.NO_GENERATED_KEYS);
+    }
+
+    PreparedStatement prepareStatement(String query, int autoGeneratedKeys) throws SQLException {
+        return statements.prepare(query, autoGeneratedKeys);
+    }
+
+    /**
+     * Marks the connection as broken if the exception came from a lost
+     * connection so the pool replaces it instead of reusing it
+     *
+     * @param ex exception thrown while using the connection
+     */
+    void checkBroken(SQLException ex) {
+        String state = ex.getSQLState();
+
+        // Class 08 is connection exceptions
+        if (state != null && state.startsWith("08")) {
+            broken = true;
+        }
+    }
+
+    /**
+     * Keeps the connection borrowed when it is closed, so a transaction can
+     * run several queries on it
+     */
+    void pin() {
+        pinned = true;
+    }
+
+    void unpin() {
+        pinned = false;
+    }
+
+    boolean isPinned() {
+        return pinned;
+    }
+
+    void markBroken() {
+        broken = true;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    long getIdleMillis() {
+        return (System.nanoTime() - lastUsed) / 1_000_000;
+    }
+
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Closes the underlying connection
+     */
+    void closePhysical() {
+        statements.clear();
+
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            // Connection is being thrown away anyway
+        }
+    }
+
+    /**
+     * Returns the connection to its pool unless it is pinned by a transaction
+     */
+    @Override
+    public void close() {
+        if (pinned) {
+            return;
+        }
+
+        pool.release(this);
+    }
+}
@@ -0,0 +1,197 @@
+package tables;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Change feed over PostgreSQL LISTEN/NOTIFY. Changes are sent with pg_notify
+ * on the connection of the surrounding transaction, so the database delivers
+ * them when it commits and drops them when it rolls back. A dedicated
+ * connection outside the pool listens on a background thread.
+ * <p>
+ * Each payload starts with an ID of the sending process, so a process ignores
+ * its own changes; its caches already hold what it wrote. If the listening
+ * connection breaks, changes sent until it reconnects are lost, so on
+ * reconnecting subscribers are told everything changed.
+ *
+ * @author karsten
+ */
+public final class PostgresChangeFeed implements ChangeFeed {
+
+    private static final Logger LOGGER = Logger.getLogger(PostgresChangeFeed.class.getName());
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]*");
+    // NOTIFY payloads must be shorter than 8000 bytes
+    private static final int MAX_PAYLOAD = 7_000;
+    private static final int POLL_MILLIS = 500;
+    private static final long RECONNECT_MILLIS = 1_000;
+
+    private final String channel;
+    private final String origin = UUID.randomUUID().toString();
+    private final List<Consumer<Change>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final Thread listener;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Starts listening on a channel
+     *
+     * @param channel channel name, shared by every process of the store
+     */
+    public PostgresChangeFeed(String channel) {
+        if (!CHANNEL.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Channel must be a lower case identifier: " + channel);
+        }
+
+        this.channel = channel;
+        this.listener = Thread.ofPlatform().daemon().name("change-feed-listener").start(this::listen);
+    }
+
+    @Override
+    public void publish(Collection<Change> changes) {
+        if (closed || changes.isEmpty()) {
+            return;
+        }
+
+        try (PooledConnection conn = DatabaseManager.getConnection()) {
+            try {
+                PreparedStatement ps = conn.prepareStatement("SELECT pg_notify(?, ?)");
+
+                for (String payload : payloads(changes)) {
+                    ps.setString(1, channel);
+                    ps.setString(2, payload);
+                    ps.executeQuery().close();
+                }
+
+                published.add(changes.size());
+            } catch (SQLException ex) {
+                // Major error
+                conn.checkBroken(ex);
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Splits changes into payloads of the form "origin entity:id,entity:id"
+     */
+    private List<String> payloads(Collection<Change> changes) {
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(origin);
+
+        for (Change change : changes) {
+            String item = change.entity() + ":" + change.id();
+
+            if (payload.length() + item.length() + 1 > MAX_PAYLOAD) {
+                payloads.add(payload.toString());
+                payload = new StringBuilder(origin);
+            }
+
+            payload.append((payload.length() == origin.length()) ? ' ' : ',').append(item);
+        }
+
+        payloads.add(payload.toString());
+
+        return payloads;
+    }
+
+    @Override
+    public void subscribe(Consumer<Change> listener) {
+        listeners.add(listener);
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+
+        while (!closed) {
+            try (Connection conn = DatabaseManager.openDedicatedConnection(); Statement statement = conn.createStatement()) {
+                statement.execute("LISTEN " + channel);
+
+                if (reconnecting) {
+                    LOGGER.info("Change feed reconnected, dropping every cached entity");
+                    deliver(Change.everything());
+                }
+
+                reconnecting = true;
+                PGConnection pg = conn.unwrap(PGConnection.class);
+
+                while (!closed) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException ex) {
+                if (closed) {
+                    return;
+                }
+
+                LOGGER.log(Level.WARNING, "Change feed lost its connection: {0}", ex.getMessage());
+                reconnecting = true;
+
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        int space = payload.indexOf(' ');
+
+        // Our own changes, or nothing to do
+        if (space < 0 || payload.substring(0, space).equals(origin)) {
+            return;
+        }
+
+        for (String item : payload.substring(space + 1).split(",")) {
+            int colon = item.lastIndexOf(':');
+
+            try {
+                deliver(new Change(item.substring(0, colon), Integer.parseInt(item.substring(colon + 1))));
+                received.increment();
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Could not apply change " + item, ex);
+            }
+        }
+    }
+
+    private void deliver(Change change) {
+        for (Consumer<Change> subscriber : listeners) {
+            subscriber.accept(change);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        listener.interrupt();
+        listeners.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "PostgresChangeFeed{" + "channel=" + channel + ", published=" + published.sum() + ", received=" + received.sum()
+                + ", listening=" + listener.isAlive() + '}';
+    }
+}
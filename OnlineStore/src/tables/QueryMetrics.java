@@ -0,0 +1,243 @@
+package tables;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of per statement query metrics. Every select, insert, update, and
+ * delete run through Table is timed and counted under its normalized SQL, with
+ * literals replaced by ? and whitespace collapsed, so the same query with
+ * different values shares one entry. Recording can be turned off with
+ * onlinestore.metrics.enabled=false.
+ *
+ * @author karsten
+ */
+public final class QueryMetrics {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("onlinestore.metrics.enabled", "true"));
+    // Raw queries are almost always constants, but don't let generated SQL
+    // grow the lookup map without bound
+    private static final int MAX_RAW_QUERIES = 10_000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w$])-?\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, Entry> byQuery = new ConcurrentHashMap<>();
+    private static final Map<String, Entry> byShape = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+
+        private final String sql;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Entry(String sql) {
+            this.sql = sql;
+        }
+
+        StatementStats snapshot() {
+            return new StatementStats(sql, calls.sum(), rows.sum(), errors.sum(), toMillis(totalNanos.sum()),
+                    toMillis(latency.percentile(0.50)), toMillis(latency.percentile(0.95)),
+                    toMillis(latency.percentile(0.99)), toMillis(latency.getMax()));
+        }
+
+        void reset() {
+            calls.reset();
+            rows.reset();
+            errors.reset();
+            totalNanos.reset();
+            latency.reset();
+        }
+    }
+
+    static {
+        if (ENABLED) {
+            register();
+        }
+    }
+
+    private QueryMetrics() {
+    }
+
+    private static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName name = new ObjectName("tables:type=QueryMetrics");
+
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new QueryMetricsMXBean() {
+                    @Override
+                    public List<StatementStats> getStatements() {
+                        return QueryMetrics.getStatements();
+                    }
+
+                    @Override
+                    public int getStatementCount() {
+                        return byShape.size();
+                    }
+
+                    @Override
+                    public long getTotalCalls() {
+                        return QueryMetrics.getTotalCalls();
+                    }
+
+                    @Override
+                    public void reset() {
+                        QueryMetrics.reset();
+                    }
+                }, name);
+            }
+        } catch (JMException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Normalizes a statement so queries that only differ in literal values or
+     * formatting are counted together
+     *
+     * @param query SQL statement
+     * @return normalized statement
+     */
+    public static String normalize(String query) {
+        String shape = STRING_LITERAL.matcher(query).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = WHITESPACE.matcher(shape).replaceAll(" ").trim();
+
+        // IN lists of any length are the same statement
+        return IN_LIST.matcher(shape).replaceAll("IN (?)");
+    }
+
+    private static Entry entry(String query) {
+        Entry entry = byQuery.get(query);
+
+        if (entry != null) {
+            return entry;
+        }
+
+        entry = byShape.computeIfAbsent(normalize(query), Entry::new);
+
+        if (byQuery.size() < MAX_RAW_QUERIES) {
+            byQuery.put(query, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Records a finished statement
+     *
+     * @param query SQL statement as it was run
+     * @param nanos time the statement took
+     * @param rows rows returned or changed
+     */
+    static void record(String query, long nanos, long rows) {
+        if (!ENABLED) {
+            return;
+        }
+
+        Entry entry = entry(query);
+
+        entry.calls.increment();
+        entry.rows.add(rows);
+        entry.totalNanos.add(nanos);
+        entry.latency.record(nanos);
+    }
+
+    /**
+     * Records a statement that failed
+     *
+     * @param query SQL statement as it was run
+     * @param nanos time until the statement failed
+     */
+    static void recordError(String query, long nanos) {
+        if (!ENABLED) {
+            return;
+        }
+
+        Entry entry = entry(query);
+
+        entry.calls.increment();
+        entry.errors.increment();
+        entry.totalNanos.add(nanos);
+        entry.latency.record(nanos);
+    }
+
+    /**
+     * Gets the metrics of every statement run so far, the statements with the
+     * most total time first
+     *
+     * @return statement metrics
+     */
+    public static List<StatementStats> getStatements() {
+        List<StatementStats> stats = new ArrayList<>();
+
+        for (Entry entry : byShape.values()) {
+            StatementStats snapshot = entry.snapshot();
+
+            // Skip statements that have not run since the last reset
+            if (snapshot.getCalls() > 0) {
+                stats.add(snapshot);
+            }
+        }
+
+        stats.sort(Comparator.comparingDouble(StatementStats::getTotalMillis).reversed());
+
+        return stats;
+    }
+
+    /**
+     * Gets the metrics of one statement
+     *
+     * @param query SQL statement, normalized before lookup
+     * @return statement metrics or null if it has not run
+     */
+    public static StatementStats getStatement(String query) {
+        Entry entry = byShape.get(normalize(query));
+
+        return (entry == null) ? null : entry.snapshot();
+    }
+
+    public static long getTotalCalls() {
+        long calls = 0;
+
+        for (Entry entry : byShape.values()) {
+            calls += entry.calls.sum();
+        }
+
+        return calls;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Zeroes every statement's metrics, for example before running one menu
+     * flow to see the queries it makes
+     */
+    public static void reset() {
+        for (Entry entry : byShape.values()) {
+            entry.reset();
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,19 @@
+package tables;
+
+import java.util.List;
+
+/**
+ * JMX view of the query metrics, registered as tables:type=QueryMetrics
+ *
+ * @author karsten
+ */
+public interface QueryMetricsMXBean {
+
+    List<StatementStats> getStatements();
+
+    int getStatementCount();
+
+    long getTotalCalls();
+
+    void reset();
+}
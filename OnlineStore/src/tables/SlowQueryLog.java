@@ -0,0 +1,143 @@
+package tables;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * Logs statements that take longer than onlinestore.slowQuery.threshold
+ * milliseconds (default 500, negative turns the log off) to a rolling file set
+ * by onlinestore.slowQuery.file, by default in the temporary directory so runs
+ * don't leave logs in the working directory. The first time each normalized
+ * statement is slow its plan is captured in the background and logged as
+ * well: EXPLAIN (ANALYZE, BUFFERS) for selects, and a plain EXPLAIN for writes
+ * so they are not run twice.
+ *
+ * Parameters of statements that touch payment information are never logged,
+ * and quoted constants are removed from their plans.
+ *
+ * @author karsten
+ */
+final class SlowQueryLog {
+
+    private static final long THRESHOLD_NANOS = Long.getLong("onlinestore.slowQuery.threshold", 500) * 1_000_000;
+    private static final String FILE = System.getProperty("onlinestore.slowQuery.file", "%t/onlinestore-slow-queries.%g.log");
+    private static final int FILE_SIZE = Integer.getInteger("onlinestore.slowQuery.fileSize", 10 * 1024 * 1024);
+    private static final int FILE_COUNT = Integer.getInteger("onlinestore.slowQuery.fileCount", 5);
+
+    private static final Pattern SENSITIVE = Pattern.compile("payment_info|card_number|cvv|exp_date", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SELECT = Pattern.compile("^\\s*(SELECT|WITH)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QUOTED_CONSTANT = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Set<String> explained = ConcurrentHashMap.newKeySet();
+
+    private SlowQueryLog() {
+    }
+
+    /**
+     * Created on the first slow statement so nothing is written when every
+     * query is fast
+     */
+    private static final class Holder {
+
+        private static final Logger LOGGER = createLogger();
+        // One plan at a time, so a burst of slow queries can't take every
+        // pooled connection
+        private static final ExecutorService EXPLAINER = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "slow-query-explain");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    private static Logger createLogger() {
+        Logger logger = Logger.getLogger("tables.slowquery");
+
+        try {
+            FileHandler handler = new FileHandler(FILE, FILE_SIZE, FILE_COUNT, true);
+            handler.setFormatter(new SimpleFormatter());
+            logger.addHandler(handler);
+            logger.setUseParentHandlers(false);
+        } catch (IOException ex) {
+            // Still log to the console rather than failing the query
+            logger.log(Level.WARNING, "Could not open the slow query log: {0}", ex.getMessage());
+        }
+
+        return logger;
+    }
+
+    /**
+     * Logs the statement if it was slow
+     *
+     * @param query SQL statement as it was run
+     * @param arguments bound arguments, for a batch those of its last row
+     * @param nanos time the statement took
+     */
+    static void check(String query, Object[] arguments, long nanos) {
+        if (THRESHOLD_NANOS < 0 || nanos < THRESHOLD_NANOS) {
+            return;
+        }
+
+        boolean sensitive = SENSITIVE.matcher(query).find();
+        String parameters = sensitive ? "<redacted>" : Arrays.deepToString(arguments);
+
+        Holder.LOGGER.log(Level.WARNING, "Slow query ({0} ms): {1}\nParameters: {2}",
+                new Object[]{String.format("%.3f", nanos / 1_000_000.0), query, parameters});
+
+        // Only PostgreSQL has plans to show
+        if (Table.getEngine() instanceof JdbcEngine && explained.add(QueryMetrics.normalize(query))) {
+            try {
+                Holder.EXPLAINER.execute(() -> explain(query, arguments, sensitive));
+            } catch (RejectedExecutionException ex) {
+                explained.remove(QueryMetrics.normalize(query));
+            }
+        }
+    }
+
+    private static void explain(String query, Object[] arguments, boolean sensitive) {
+        boolean analyze = SELECT.matcher(query).find();
+        String explain = (analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + query;
+        StringBuilder plan = new StringBuilder();
+
+        // Straight from the pool so the plan is neither timed nor logged itself
+        try (PooledConnection conn = DatabaseManager.getPool().borrow()) {
+            Connection connection = conn.getConnection();
+
+            try (PreparedStatement ps = connection.prepareStatement(explain)) {
+                Table.setArguments(ps, arguments);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append('\n').append(rs.getString(1));
+                    }
+                }
+            } catch (SQLException ex) {
+                conn.checkBroken(ex);
+                Holder.LOGGER.log(Level.INFO, "Could not explain {0}: {1}", new Object[]{query, ex.getMessage()});
+                return;
+            }
+        } catch (RuntimeException ex) {
+            // No connection could be borrowed
+            Holder.LOGGER.log(Level.INFO, "Could not explain {0}: {1}", new Object[]{query, ex.getMessage()});
+            return;
+        }
+
+        String text = sensitive ? QUOTED_CONSTANT.matcher(plan).replaceAll("'<redacted>'") : plan.toString();
+
+        Holder.LOGGER.log(Level.INFO, "Plan for {0}:{1}", new Object[]{query, text});
+    }
+}
@@ -0,0 +1,106 @@
+package tables;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of prepared statements for a single connection.
+ * Statements are keyed by their SQL text and whether they return generated
+ * keys, and are closed when they are evicted. Not thread-safe, it is only used
+ * by whoever currently holds the connection.
+ *
+ * @author karsten
+ */
+final class StatementCache {
+
+    private record Key(String query, int autoGeneratedKeys) {
+
+    }
+
+    /**
+     * Hit, miss, and eviction counters shared by every cache in a pool
+     */
+    static final class Counters {
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+
+    private final Connection connection;
+    private final Counters counters;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int maxSize, Counters counters) {
+        this.connection = connection;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+
+                counters.evictions.increment();
+                closeQuietly(eldest.getValue());
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a prepared statement for the query, preparing it if it is not
+     * already cached. The statement must not be closed by the caller.
+     *
+     * @param query SQL query
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or
+     * Statement.NO_GENERATED_KEYS
+     * @return prepared statement with its parameters cleared
+     * @throws SQLException statement could not be prepared
+     */
+    PreparedStatement prepare(String query, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(query, autoGeneratedKeys);
+        PreparedStatement ps = statements.get(key);
+
+        if (ps != null && !ps.isClosed()) {
+            counters.hits.increment();
+            ps.clearParameters();
+
+            return ps;
+        }
+
+        counters.misses.increment();
+        ps = connection.prepareStatement(query, autoGeneratedKeys);
+        statements.put(key, ps);
+
+        return ps;
+    }
+
+    /**
+     * Closes and forgets every cached statement
+     */
+    void clear() {
+        for (PreparedStatement ps : statements.values()) {
+            closeQuietly(ps);
+        }
+
+        statements.clear();
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ex) {
+            // Statement is being thrown away anyway
+        }
+    }
+}
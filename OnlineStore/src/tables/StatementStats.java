@@ -0,0 +1,85 @@
+package tables;
+
+/**
+ * Snapshot of the metrics recorded for one normalized SQL statement.
+ * Latencies are in milliseconds.
+ *
+ * @author karsten
+ */
+public final class StatementStats {
+
+    private final String sql;
+    private final long calls;
+    private final long rows;
+    private final long errors;
+    private final double totalMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    StatementStats(String sql, long calls, long rows, long errors, double totalMillis,
+            double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+        this.sql = sql;
+        this.calls = calls;
+        this.rows = rows;
+        this.errors = errors;
+        this.totalMillis = totalMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Gets the rows returned by selects, or changed by inserts, updates, and
+     * deletes
+     *
+     * @return total rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public double getMeanMillis() {
+        return (calls == 0) ? 0 : totalMillis / calls;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP95Millis() {
+        return p95Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d, rows=%d, errors=%d, total=%.3fms, p50=%.3fms, p95=%.3fms, p99=%.3fms, max=%.3fms: %s",
+                calls, rows, errors, totalMillis, p50Millis, p95Millis, p99Millis, maxMillis, sql);
+    }
+}
@@ -0,0 +1,109 @@
+package tables;
+
+import java.io.OutputStream;
+import java.io.Reader;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.sql.rowset.CachedRowSet;
+
+/**
+ * Storage underneath Table. Every query an entity makes goes through the
+ * current engine, which is PostgreSQL over JDBC unless onlinestore.storage is
+ * set to memory or another engine is set with Table.setEngine. Engines throw
+ * RuntimeException when a statement fails and
+ * UnsupportedOperationException for statements they can't run.
+ *
+ * @author karsten
+ */
+public interface StorageEngine {
+
+    /**
+     * Runs a select
+     *
+     * @param query select query
+     * @param arguments query arguments
+     * @return every row, positioned before the first
+     */
+    CachedRowSet select(String query, Object... arguments);
+
+    /**
+     * Lazily maps the rows of a select. The stream must be closed.
+     *
+     * @param <T> type each row is mapped to
+     * @param query select query
+     * @param fetchSize rows fetched per round trip, if the engine fetches
+     * @param func maps the current row
+     * @param arguments query arguments
+     * @return stream of mapped rows
+     */
+    <T> Stream<T> stream(String query, int fetchSize, Function<ResultSet, T> func, Object... arguments);
+
+    /**
+     * Runs a statement that changes rows
+     *
+     * @param query statement
+     * @param arguments statement arguments
+     * @return rows affected
+     */
+    int execute(String query, Object... arguments);
+
+    /**
+     * Runs the same statement once per row of arguments
+     *
+     * @param query statement
+     * @param rows arguments for each run
+     * @return rows affected by each run
+     */
+    int[] executeBatch(String query, List<Object[]> rows);
+
+    /**
+     * Inserts one row
+     *
+     * @param query insert statement
+     * @param arguments statement arguments
+     * @return first column of the inserted row, its generated ID
+     */
+    int insert(String query, Object... arguments);
+
+    /**
+     * Inserts many rows with one statement
+     *
+     * @param <T> type each inserted row is mapped to
+     * @param query insert statement
+     * @param rows arguments for each row
+     * @param func maps each inserted row with every column
+     * @return mapped rows in the same order as the input
+     */
+    <T> List<T> insertBatch(String query, List<Object[]> rows, Function<ResultSet, T> func);
+
+    /**
+     * Runs the work in a transaction, or a savepoint if one is already open on
+     * this thread. The work is undone if it throws.
+     *
+     * @param <T> result type
+     * @param work work to run
+     * @return result of the work
+     */
+    <T> T inTransaction(Callable<T> work);
+
+    /**
+     * Runs a COPY ... FROM STDIN statement
+     *
+     * @param query COPY statement
+     * @param reader rows to copy
+     * @return rows copied
+     */
+    long copyIn(String query, Reader reader);
+
+    /**
+     * Runs a COPY ... TO STDOUT statement
+     *
+     * @param query COPY statement
+     * @param out where the rows are written
+     * @return rows copied
+     */
+    long copyOut(String query, OutputStream out);
+}
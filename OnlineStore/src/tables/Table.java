@@ -1,14 +1,31 @@
 package tables;
 
 import java.io.Closeable;
-import java.nio.channels.ClosedChannelException;
-import java.sql.Connection;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.sql.Array;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import javax.sql.rowset.CachedRowSet;
+import tables.memory.MemoryEngine;
 
 /**
  *
@@ -16,60 +33,367 @@ import java.util.function.Function;
  */
 public abstract class Table implements Closeable {
 
+    /**
+     * Rows fetched per round trip by streaming selects
+     */
+    protected static final int DEFAULT_FETCH_SIZE = Integer.getInteger("onlinestore.stream.fetchSize", 1000);
+
+    /**
+     * Rows sent per round trip by batch inserts
+     */
+    protected static final int BATCH_SIZE = Integer.getInteger("onlinestore.batch.size", 1000);
+
+    /**
+     * Most IDs a bulk load sends in one query
+     */
+    protected static final int ID_CHUNK_SIZE = Integer.getInteger("onlinestore.ids.chunkSize", 1000);
+
     private boolean closed = false;
 
-    private static void setArguments(PreparedStatement ps, Object[] arguments) throws SQLException {
-        // Adds all arguments to the query
-        for (int i = 0; i < arguments.length; i++) {
-            ps.setObject(i + 1, arguments[i]);
+    /**
+     * Entities each cache holds unless onlinestore.cache.&lt;name&gt;.maxSize
+     * says otherwise
+     */
+    protected static final long DEFAULT_CACHE_SIZE = Long.getLong("onlinestore.cache.maxSize", 10_000);
+
+    private static volatile StorageEngine engine
+            = "memory".equalsIgnoreCase(System.getProperty("onlinestore.storage")) ? new MemoryEngine() : new JdbcEngine();
+
+    private static volatile ChangeFeed changeFeed = createChangeFeed();
+
+    // Entities written by each open transaction scope of the thread, innermost
+    // first
+    private static final ThreadLocal<Deque<Set<Change>>> WRITES = new ThreadLocal<>();
+
+    /**
+     * Creates a bounded entity cache that is cleared when a transaction rolls
+     * back. The onlinestore.cache.&lt;name&gt;.maxSize and
+     * onlinestore.cache.&lt;name&gt;.eviction properties override its size and
+     * eviction, and onlinestore.cache.eviction sets the eviction of every
+     * cache. Entries never expire unless
+     * onlinestore.cache.&lt;name&gt;.timeToLive is set.
+     *
+     * @param <T> entity type
+     * @param name entity name
+     * @param defaultMaxSize entities held unless configured otherwise
+     * @return empty cache
+     */
+    protected static <T> EntityCache<T> createCache(String name, long defaultMaxSize) {
+        return createCache(name, defaultMaxSize, null, Duration.ZERO);
+    }
+
+    /**
+     * Creates a bounded entity cache whose entries weigh more than one, for
+     * entities that hold many others
+     *
+     * @param <T> entity type
+     * @param name entity name
+     * @param defaultMaxWeight total weight held unless configured otherwise
+     * @param weigher weight of an entity
+     * @return empty cache
+     * @see #createCache(String, long)
+     */
+    protected static <T> EntityCache<T> createCache(String name, long defaultMaxWeight, ToIntFunction<? super T> weigher) {
+        return createCache(name, defaultMaxWeight, weigher, Duration.ZERO);
+    }
+
+    /**
+     * Creates a bounded entity cache for entities that other processes change,
+     * whose entries expire. Entries read in the last fifth of their life are
+     * reloaded in the background. The onlinestore.cache.&lt;name&gt;.timeToLive
+     * and onlinestore.cache.&lt;name&gt;.refreshAhead properties, in
+     * milliseconds, override both, and a time to live of 0 never expires.
+     *
+     * @param <T> entity type
+     * @param name entity name
+     * @param defaultMaxSize entities held unless configured otherwise
+     * @param defaultTimeToLive how old a returned entity may be unless
+     * configured otherwise
+     * @return empty cache
+     * @see #createCache(String, long)
+     */
+    protected static <T> EntityCache<T> createCache(String name, long defaultMaxSize, Duration defaultTimeToLive) {
+        return createCache(name, defaultMaxSize, null, defaultTimeToLive);
+    }
+
+    private static <T> EntityCache<T> createCache(String name, long defaultMaxWeight, ToIntFunction<? super T> weigher,
+            Duration defaultTimeToLive) {
+        String prefix = "onlinestore.cache." + name + ".";
+        String eviction = System.getProperty(prefix + "eviction", System.getProperty("onlinestore.cache.eviction", "tiny_lfu"));
+        Duration timeToLive = Duration.ofMillis(Long.getLong(prefix + "timeToLive", defaultTimeToLive.toMillis()));
+        Duration refreshAhead = Duration.ofMillis(Long.getLong(prefix + "refreshAhead", timeToLive.toMillis() / 5));
+
+        EntityCache<T> cache = new EntityCache<>(name, Long.getLong(prefix + "maxSize", defaultMaxWeight),
+                EntityCache.Eviction.valueOf(eviction.toUpperCase().replace('-', '_')), weigher, timeToLive, refreshAhead);
+        CacheMetrics.add(cache);
+
+        return cache;
+    }
+
+    /**
+     * Drops every cached entity, so the next lookups read from storage
+     */
+    public static void clearCaches() {
+        for (EntityCache<?> cache : CacheMetrics.caches()) {
+            cache.clear();
         }
     }
 
-    protected static ResultSet select(String query) throws RuntimeException, IllegalArgumentException {
-        Connection conn = DatabaseManager.getConnection();
+    /**
+     * Creates the change feed onlinestore.changeFeed names: none, the default
+     * for a single process, local, or postgres to share changes with other
+     * processes on the onlinestore.changeFeed.channel channel
+     */
+    private static ChangeFeed createChangeFeed() {
+        ChangeFeed feed = switch (System.getProperty("onlinestore.changeFeed", "none").toLowerCase()) {
+            case "none" -> null;
+            case "local" -> new LocalChangeFeed();
+            case "postgres" -> new PostgresChangeFeed(System.getProperty("onlinestore.changeFeed.channel", "onlinestore_changes"));
+            default -> throw new IllegalArgumentException("Unknown change feed " + System.getProperty("onlinestore.changeFeed"));
+        };
+
+        if (feed != null) {
+            feed.subscribe(Table::onChange);
+        }
+
+        return feed;
+    }
+
+    /**
+     * Drops cached entities whose changes were undone or never written
+     *
+     * @param changes changed entities
+     */
+    static void evict(Collection<Change> changes) {
+        changes.forEach(Table::onChange);
+    }
+
+    /**
+     * Drops the cached entities another process changed
+     */
+    private static void onChange(Change change) {
+        if (change.isEverything()) {
+            clearCaches();
+            return;
+        }
+
+        EntityCache<?> cache = CacheMetrics.find(change.entity());
+
+        if (cache != null) {
+            cache.remove(change.id());
+        }
+    }
+
+    /**
+     * Gets the feed that tells other processes which cached entities changed
+     *
+     * @return change feed, or null if changes aren't shared
+     */
+    public static ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Replaces the change feed and closes the old one. The entity caches
+     * drop whatever the new feed reports.
+     *
+     * @param feed new change feed, or null to stop sharing changes
+     */
+    public static void setChangeFeed(ChangeFeed feed) {
+        if (feed != null) {
+            feed.subscribe(Table::onChange);
+        }
+
+        ChangeFeed old = changeFeed;
+        changeFeed = feed;
+
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Publishes changes on the change feed, if there is one. Inside a
+     * transaction they are only delivered if it commits.
+     *
+     * @param changes changed entities
+     */
+    protected static void publish(Collection<Change> changes) {
+        recordWrites(changes);
+
+        ChangeFeed feed = changeFeed;
+
+        if (feed != null && !changes.isEmpty()) {
+            feed.publish(changes);
+        }
+    }
+
+    /**
+     * Gets the cached entities a write to this row changes: the entity itself
+     * and any entity that holds it. Rows that aren't cached change nothing.
+     *
+     * @return changed entities
+     */
+    protected List<Change> changes() {
+        return List.of();
+    }
+
+    /**
+     * Publishes the changes of this row, for writes that don't go through
+     * update or delete
+     */
+    protected void changed() {
+        publish(changes());
+    }
+
+    /**
+     * Gets the storage engine every query runs on
+     *
+     * @return storage engine
+     */
+    public static StorageEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Replaces the storage engine, for example with an in-memory one for
+     * tests and benchmarks. Every entity cache is cleared since cached
+     * entities belong to the old engine.
+     *
+     * @param engine new storage engine
+     */
+    public static void setEngine(StorageEngine engine) {
+        Table.engine = engine;
+        clearCaches();
+    }
+
+    /**
+     * Runs the work in a transaction that commits once when the work finishes
+     * and rolls back if it throws. Every query the work makes uses the same
+     * connection. Nested calls use a savepoint, so a failure only undoes the
+     * nested work. On rollback the cached entities the undone work wrote are
+     * dropped, and the rest of the caches are kept.
+     *
+     * @param <T> result type
+     * @param work work to run
+     * @return result of the work
+     */
+    public static <T> T inTransaction(Callable<T> work) {
+        Deque<Set<Change>> scopes = WRITES.get();
+
+        if (scopes == null) {
+            scopes = new ArrayDeque<>();
+            WRITES.set(scopes);
+        }
+
+        Set<Change> writes = new LinkedHashSet<>();
+        scopes.push(writes);
 
         try {
-            PreparedStatement ps = conn.prepareStatement(query);
+            T result = engine.inTransaction(work);
+            scopes.pop();
 
-            // Store the result of the select query in the ResultSet
-            ResultSet rs = ps.executeQuery();
+            // Undone along with the surrounding scope if that fails
+            if (!scopes.isEmpty()) {
+                scopes.peek().addAll(writes);
+            }
 
-            if (rs.next()) {
-                // Returns the result set
-                return rs;
+            return result;
+        } catch (RuntimeException | Error ex) {
+            scopes.pop();
+
+            // Cached entities may hold changes that were just undone
+            evict(writes);
+            throw ex;
+        } finally {
+            if (scopes.isEmpty()) {
+                WRITES.remove();
             }
+        }
+    }
 
-            throw new IllegalArgumentException("ResultSet is empty");
+    /**
+     * Records entities written in the current transaction scope, so they are
+     * dropped from the caches if it rolls back. Writes outside a transaction
+     * aren't recorded.
+     *
+     * @param changes written entities
+     */
+    static void recordWrites(Collection<Change> changes) {
+        Deque<Set<Change>> scopes = WRITES.get();
+
+        if (scopes != null) {
+            scopes.peek().addAll(changes);
+        }
+    }
 
-        } catch (SQLException ex) {
-            // Major error
-            throw new RuntimeException(ex.getMessage());
+    /**
+     * Runs the work in a transaction that commits once when the work finishes
+     *
+     * @param work work to run
+     * @see #inTransaction(Callable)
+     */
+    public static void inTransaction(Runnable work) {
+        inTransaction(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the work on a virtual thread so independent loads can run in
+     * parallel. No more tasks run at once than the pool has connections.
+     *
+     * @param <T> result type
+     * @param work work to run
+     * @return future result of the work
+     */
+    protected static <T> CompletableFuture<T> async(Supplier<T> work) {
+        return AsyncExecutor.supply(work);
+    }
+
+    static void setArguments(PreparedStatement ps, Object[] arguments) throws SQLException {
+        // Adds all arguments to the query
+        for (int i = 0; i < arguments.length; i++) {
+            ps.setObject(i + 1, arguments[i]);
         }
     }
 
+    protected static ResultSet select(String query) throws RuntimeException, IllegalArgumentException {
+        return select(query, new Object[0]);
+    }
+
     protected static ResultSet select(String query, Object... arguments) throws RuntimeException, IllegalArgumentException {
-        Connection conn = DatabaseManager.getConnection();
+        long start = System.nanoTime();
+        CachedRowSet rs;
 
         try {
-            PreparedStatement ps = conn.prepareStatement(query);
-
-            // Adds all arguments to the query
-            setArguments(ps, arguments);
+            rs = engine.select(query, arguments);
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
+        }
 
-            // Store the result of the select query in the ResultSet
-            ResultSet rs = ps.executeQuery();
+        recordQuery(query, arguments, start, rs.size());
 
+        try {
             if (rs.next()) {
                 // Returns the result set
                 return rs;
             }
-
-            throw new IllegalArgumentException("ResultSet is empty");
-
         } catch (SQLException ex) {
             // Major error
             throw new RuntimeException(ex.getMessage());
         }
+
+        throw new IllegalArgumentException("ResultSet is empty");
+    }
+
+    private static void recordQuery(String query, Object[] arguments, long start, long rows) {
+        long elapsed = System.nanoTime() - start;
+
+        QueryMetrics.record(query, elapsed, rows);
+        SlowQueryLog.check(query, arguments, elapsed);
     }
 
     protected static <T> List<T> map(ResultSet rs, Function<ResultSet, T> func) {
@@ -87,6 +411,44 @@ public abstract class Table implements Closeable {
         return result;
     }
     
+    /**
+     * Reads the first column of every row as an ID, for bulk loads with
+     * fromIDs
+     *
+     * @param rs result positioned on its first row
+     * @return IDs in row order
+     */
+    protected static List<Integer> ids(ResultSet rs) {
+        return mapIDs(rs, id -> id);
+    }
+
+    /**
+     * Reads an array column of IDs, such as an array_agg of a joined table's
+     * IDs. The NULL that array_agg collects when a LEFT JOIN found nothing is
+     * left out.
+     *
+     * @param rs result positioned on a row
+     * @param column array column
+     * @return IDs in array order
+     * @throws SQLException the column isn't an array
+     */
+    protected static List<Integer> idArray(ResultSet rs, String column) throws SQLException {
+        Array array = rs.getArray(column);
+        List<Integer> ids = new ArrayList<>();
+
+        if (array == null) {
+            return ids;
+        }
+
+        for (Object id : (Object[]) array.getArray()) {
+            if (id != null) {
+                ids.add(((Number) id).intValue());
+            }
+        }
+
+        return ids;
+    }
+
     protected static <T> List<T> mapIDs(ResultSet rs, Function<Integer, T> func) {
         List<T> result = new ArrayList<>();
 
@@ -102,93 +464,316 @@ public abstract class Table implements Closeable {
         return result;
     }
 
-    protected int update(String query, Object... arguments) {
-        checkClosed();
-        Connection conn = DatabaseManager.getConnection();
+    /**
+     * Gets many entities by ID, loading every one that isn't cached with one
+     * query per ID_CHUNK_SIZE IDs instead of one query each
+     *
+     * @param <T> entity type
+     * @param cache entity cache
+     * @param ids ids, may repeat
+     * @param query select query taking an array of IDs, as in
+     * WHERE id = ANY(?), that orders the rows of each entity together
+     * @param idColumn column holding the entity ID
+     * @param func maps the rows of one entity, leaving the cursor on its last
+     * row
+     * @return entities in the order of the IDs, without the ones that don't
+     * exist
+     */
+    protected static <T> List<T> fromIDs(EntityCache<T> cache, Collection<Integer> ids, String query, String idColumn,
+            Function<ResultSet, T> func) {
+        return cache.getAll(ids, missing -> {
+            Map<Integer, T> loaded = new HashMap<>();
+
+            for (int from = 0; from < missing.size(); from += ID_CHUNK_SIZE) {
+                List<Integer> chunk = missing.subList(from, Math.min(missing.size(), from + ID_CHUNK_SIZE));
+                ResultSet rs;
+
+                try {
+                    rs = select(query, (Object) chunk.toArray(Integer[]::new));
+                } catch (IllegalArgumentException ex) {
+                    // None of them exist
+                    continue;
+                }
 
-        try {
-            PreparedStatement ps = conn.prepareStatement(query);
+                try {
+                    do {
+                        int id = rs.getInt(idColumn);
+                        loaded.put(id, func.apply(rs));
+                    } while (rs.next());
+                } catch (SQLException ex) {
+                    // Major error
+                    throw new RuntimeException(ex.getMessage());
+                }
+            }
 
-            // Adds all arguments to the query
-            setArguments(ps, arguments);
+            return loaded;
+        });
+    }
 
-            // Execute the update query
-            return ps.executeUpdate();
-        } catch (SQLException ex) {
-            // Major error
-            throw new RuntimeException(ex.getMessage());
+    /**
+     * Moves to the next row if it belongs to the same entity, for entities
+     * made of several joined rows. Otherwise the cursor stays on the entity's
+     * last row, so a result holding many entities can be read one entity at a
+     * time.
+     *
+     * @param rs result ordered by entity
+     * @param idColumn column holding the entity ID
+     * @param id ID of the entity being read
+     * @return whether the cursor moved to another row of the entity
+     * @throws SQLException the result can't be read
+     */
+    protected static boolean nextRow(ResultSet rs, String idColumn, int id) throws SQLException {
+        if (rs.next() && rs.getInt(idColumn) == id) {
+            return true;
         }
+
+        rs.previous();
+
+        return false;
     }
 
-    protected static int insert(String query, Object... arguments) {
-        Connection conn = DatabaseManager.getConnection();
+    /**
+     * Lazily maps every row of a select query using a database cursor, so only
+     * one fetch of rows is held in memory at a time. The stream holds a pooled
+     * connection until it is closed or fully consumed, so it should be used in
+     * a try-with-resources block. The query is timed until the stream is
+     * closed, with the rows that were read.
+     * <p>
+     * The mapper must build each row from its own columns. A query it ran
+     * would need a second connection while the cursor holds one, so
+     * concurrent streams could take every pooled connection.
+     *
+     * @param <T> type each row is mapped to
+     * @param query select query
+     * @param fetchSize rows fetched from the database per round trip
+     * @param func maps the current row
+     * @param arguments query arguments
+     * @return stream of mapped rows
+     */
+    protected static <T> Stream<T> stream(String query, int fetchSize, Function<ResultSet, T> func, Object... arguments) {
+        long start = System.nanoTime();
+        Stream<T> rows;
 
         try {
-            PreparedStatement ps = conn.prepareStatement(query, PreparedStatement.RETURN_GENERATED_KEYS);
+            rows = engine.stream(query, fetchSize, func, arguments);
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
+        }
 
-            // Adds all arguments to the query
-            setArguments(ps, arguments);
+        LongAdder read = new LongAdder();
 
-            // Execute the update query
-            int rowsAffected = ps.executeUpdate();
+        return rows.peek(row -> read.increment())
+                .onClose(() -> recordQuery(query, arguments, start, read.sum()));
+    }
 
-            if (rowsAffected == 1) {
-                ResultSet generatedKeys = ps.getGeneratedKeys();
+    protected static <T> Stream<T> stream(String query, Function<ResultSet, T> func, Object... arguments) {
+        return stream(query, DEFAULT_FETCH_SIZE, func, arguments);
+    }
 
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
-                }
+    /**
+     * Runs a statement that changes rows and returns the number of rows
+     * changed
+     *
+     * @param query statement
+     * @param arguments statement arguments
+     * @return rows affected
+     */
+    protected static int execute(String query, Object... arguments) {
+        long start = System.nanoTime();
+
+        try {
+            int rowsAffected = engine.execute(query, arguments);
+            recordQuery(query, arguments, start, rowsAffected);
+
+            return rowsAffected;
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs the same statement once per row of arguments in one round trip
+     *
+     * @param query statement
+     * @param rows arguments for each run
+     * @return rows affected by each run
+     */
+    protected static int[] executeBatch(String query, List<Object[]> rows) {
+        long start = System.nanoTime();
+
+        try {
+            int[] counts = engine.executeBatch(query, rows);
+            long rowsAffected = 0;
+
+            for (int count : counts) {
+                rowsAffected += Math.max(0, count);
             }
 
-            throw new IllegalArgumentException("More than one entity was updated/inserted");
-        } catch (SQLException ex) {
-            // Major error
-            throw new RuntimeException(ex.getMessage());
+            recordQuery(query, rows.getLast(), start, rowsAffected);
+
+            return counts;
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
         }
     }
-    
-    protected void deleteMultipleRows(String query, Object... arguments) {
+
+    /**
+     * Runs an update, or records it for the next flush when a UnitOfWork is
+     * active on this thread
+     *
+     * @param query update statement
+     * @param arguments statement arguments
+     * @return rows affected, or 0 when the update was deferred
+     */
+    protected int update(String query, Object... arguments) {
         checkClosed();
-        Connection conn = DatabaseManager.getConnection();
+
+        UnitOfWork work = UnitOfWork.current();
+
+        if (work != null) {
+            work.record(query, arguments);
+            work.recordChanges(changes());
+            return 0;
+        }
+
+        // Before the statement, as the caller may already have changed this
+        // row's cached holders
+        recordWrites(changes());
+
+        int rowsAffected = execute(query, arguments);
+        publish(changes());
+
+        return rowsAffected;
+    }
+
+    protected static int insert(String query, Object... arguments) {
+        long start = System.nanoTime();
 
         try {
-            PreparedStatement ps = conn.prepareStatement(query);
+            int id = engine.insert(query, arguments);
+            recordQuery(query, arguments, start, 1);
 
-            // Adds all arguments to the query
-            setArguments(ps, arguments);
+            return id;
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
+        }
+    }
 
-            // Execute the update query
-            int rowsAffected = ps.executeUpdate();
+    /**
+     * Inserts many rows with one statement, sending them in batches instead of
+     * one round trip per row
+     *
+     * @param <T> type each inserted row is mapped to
+     * @param query insert statement
+     * @param rows arguments for each row
+     * @param func maps the generated keys row of each inserted row
+     * @return mapped rows in the same order as the input
+     */
+    protected static <T> List<T> insertBatch(String query, List<Object[]> rows, Function<ResultSet, T> func) {
+        if (rows.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        } catch (SQLException ex) {
-            // Major error
-            throw new RuntimeException(ex.getMessage());
+        long start = System.nanoTime();
+
+        try {
+            List<T> result = engine.insertBatch(query, rows, func);
+            recordQuery(query, rows.getLast(), start, result.size());
+
+            return result;
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
+        }
+    }
+
+    /**
+     * Inserts many rows with one statement and returns their generated IDs
+     *
+     * @param query insert statement
+     * @param rows arguments for each row
+     * @return generated IDs in the same order as the input
+     */
+    protected static List<Integer> insertBatch(String query, List<Object[]> rows) {
+        return insertBatch(query, rows, rs -> {
+            try {
+                return rs.getInt(1);
+            } catch (SQLException ex) {
+                // Major error
+                throw new RuntimeException(ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Streams rows into the database with COPY ... FROM STDIN, which is far
+     * faster than inserting them one statement at a time
+     *
+     * @param query COPY ... FROM STDIN statement
+     * @param reader rows in the format the statement names
+     * @return rows copied
+     */
+    protected static long copyIn(String query, Reader reader) {
+        long start = System.nanoTime();
+
+        try {
+            long rows = engine.copyIn(query, reader);
+            QueryMetrics.record(query, System.nanoTime() - start, rows);
+
+            return rows;
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
         }
+    }
+
+    /**
+     * Streams the rows of a COPY ... TO STDOUT statement straight to the
+     * output without mapping them
+     *
+     * @param query COPY ... TO STDOUT statement
+     * @param out where the rows are written
+     * @return rows copied
+     */
+    protected static long copyOut(String query, OutputStream out) {
+        long start = System.nanoTime();
+
+        try {
+            long rows = engine.copyOut(query, out);
+            QueryMetrics.record(query, System.nanoTime() - start, rows);
+
+            return rows;
+        } catch (RuntimeException ex) {
+            QueryMetrics.recordError(query, System.nanoTime() - start);
+            throw ex;
+        }
+    }
+
+    protected void deleteMultipleRows(String query, Object... arguments) {
+        checkClosed();
+
+        recordWrites(changes());
+        execute(query, arguments);
+        changed();
         
         close();
     }
     
     protected void delete(String query, Object... arguments) {
         checkClosed();
-        Connection conn = DatabaseManager.getConnection();
 
-        try {
-            PreparedStatement ps = conn.prepareStatement(query);
-
-            // Adds all arguments to the query
-            setArguments(ps, arguments);
-
-            // Execute the update query
-            int rowsAffected = ps.executeUpdate();
-
-            if (rowsAffected != 1) {
-                throw new IllegalArgumentException("More than one entity was updated/inserted");
-            }
+        recordWrites(changes());
+        int rowsAffected = execute(query, arguments);
 
-        } catch (SQLException ex) {
-            // Major error
-            throw new RuntimeException(ex.getMessage());
+        if (rowsAffected != 1) {
+            throw new IllegalArgumentException("More than one entity was updated/inserted");
         }
+
+        changed();
         
         close();
     }
@@ -0,0 +1,167 @@
+package tables;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Window TinyLFU: new entries go through a small LRU window, and when the
+ * cache is full an entry leaving the window is only kept if it has been used
+ * more often than the entry it would replace. The rest of the cache is a
+ * segmented LRU where entries used again are protected from eviction. One-off
+ * lookups, like a scan of the whole catalog, therefore can't push out the
+ * entries that are used all the time.
+ *
+ * @author karsten
+ */
+final class TinyLfuPolicy implements EvictionPolicy {
+
+    private final long windowMax;
+    private final long protectedMax;
+    private final FrequencySketch sketch;
+
+    // Weight of each key, least recently used first
+    private final LinkedHashMap<Integer, Integer> window = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Integer> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Integer> protectedKeys = new LinkedHashMap<>();
+
+    private long windowWeight = 0;
+    private long protectedWeight = 0;
+    private long weight = 0;
+
+    // Last key pushed out of the window, until an eviction has judged it
+    private Integer candidate = null;
+
+    /**
+     * Creates a policy for a cache of the given maximum weight
+     *
+     * @param maxWeight maximum weight
+     */
+    TinyLfuPolicy(long maxWeight) {
+        windowMax = Math.max(1, maxWeight / 100);
+        protectedMax = (maxWeight - windowMax) * 4 / 5;
+        sketch = new FrequencySketch(maxWeight);
+    }
+
+    @Override
+    public void onAccess(int key) {
+        sketch.increment(key);
+
+        Integer keyWeight = window.get(key);
+
+        if (keyWeight != null) {
+            window.putLast(key, keyWeight);
+        } else if ((keyWeight = probation.remove(key)) != null) {
+            // Used again, so it is worth protecting
+            if (Integer.valueOf(key).equals(candidate)) {
+                candidate = null;
+            }
+
+            protectedKeys.putLast(key, keyWeight);
+            protectedWeight += keyWeight;
+
+            while (protectedWeight > protectedMax && protectedKeys.size() > 1) {
+                Map.Entry<Integer, Integer> eldest = protectedKeys.pollFirstEntry();
+                protectedWeight -= eldest.getValue();
+                probation.putLast(eldest.getKey(), eldest.getValue());
+            }
+        } else if ((keyWeight = protectedKeys.get(key)) != null) {
+            protectedKeys.putLast(key, keyWeight);
+        }
+    }
+
+    @Override
+    public void onInsert(int key, int weight) {
+        sketch.increment(key);
+
+        window.putLast(key, weight);
+        windowWeight += weight;
+        this.weight += weight;
+
+        // Entries leaving the window become candidates at the end of probation
+        while (windowWeight > windowMax && !window.isEmpty()) {
+            Map.Entry<Integer, Integer> eldest = window.pollFirstEntry();
+            windowWeight -= eldest.getValue();
+            probation.putLast(eldest.getKey(), eldest.getValue());
+            candidate = eldest.getKey();
+        }
+    }
+
+    @Override
+    public void onUpdate(int key, int weight) {
+        Integer old;
+
+        if ((old = window.replace(key, weight)) != null) {
+            windowWeight += weight - old;
+        } else if ((old = protectedKeys.replace(key, weight)) != null) {
+            protectedWeight += weight - old;
+        } else if ((old = probation.replace(key, weight)) == null) {
+            return;
+        }
+
+        this.weight += weight - old;
+        onAccess(key);
+    }
+
+    @Override
+    public void onRemove(int key) {
+        Integer old;
+
+        if ((old = window.remove(key)) != null) {
+            windowWeight -= old;
+        } else if ((old = protectedKeys.remove(key)) != null) {
+            protectedWeight -= old;
+        } else if ((old = probation.remove(key)) == null) {
+            return;
+        }
+
+        if (Integer.valueOf(key).equals(candidate)) {
+            candidate = null;
+        }
+
+        weight -= old;
+    }
+
+    @Override
+    public int evict() {
+        Map.Entry<Integer, Integer> evicted;
+
+        if (!probation.isEmpty()) {
+            // The key last pushed out of the window competes with the eldest
+            // entry on probation, and the one used less often goes. Ties keep
+            // the eldest. Without a candidate the eldest simply goes.
+            int victim = probation.firstEntry().getKey();
+            boolean admit = candidate == null || candidate == victim
+                    || sketch.frequency(candidate) > sketch.frequency(victim);
+            int key = admit ? victim : candidate;
+
+            candidate = null;
+            evicted = Map.entry(key, probation.remove(key));
+        } else if (!protectedKeys.isEmpty()) {
+            evicted = protectedKeys.pollFirstEntry();
+            protectedWeight -= evicted.getValue();
+        } else {
+            evicted = window.pollFirstEntry();
+            windowWeight -= evicted.getValue();
+        }
+
+        weight -= evicted.getValue();
+
+        return evicted.getKey();
+    }
+
+    @Override
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedKeys.clear();
+        windowWeight = 0;
+        protectedWeight = 0;
+        weight = 0;
+        candidate = null;
+    }
+}
@@ -0,0 +1,153 @@
+package tables;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.concurrent.Callable;
+
+/**
+ * Transaction scope for the current thread. While it is open every query on
+ * the thread runs on the same pinned connection, and the work is committed
+ * once at the end. Nested scopes use savepoints so only their own work is
+ * undone when they fail.
+ *
+ * @author karsten
+ */
+final class Transaction {
+
+    private static final ThreadLocal<Transaction> CURRENT = new ThreadLocal<>();
+
+    private final PooledConnection conn;
+
+    private Transaction(PooledConnection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Gets the connection pinned by the current thread's transaction
+     *
+     * @return pinned connection or null if there is no transaction
+     */
+    static PooledConnection pinnedConnection() {
+        Transaction tx = CURRENT.get();
+
+        return (tx == null) ? null : tx.conn;
+    }
+
+    static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Runs the work in a transaction, or in a savepoint of the current
+     * transaction if one is already open
+     *
+     * @param <T> result type
+     * @param work work to run
+     * @return result of the work
+     */
+    static <T> T call(Callable<T> work) {
+        Transaction tx = CURRENT.get();
+
+        if (tx != null) {
+            return tx.callNested(work);
+        }
+
+        PooledConnection conn = DatabaseManager.getConnection();
+        Connection connection = conn.getConnection();
+
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException ex) {
+            conn.checkBroken(ex);
+            conn.close();
+
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        conn.pin();
+        CURRENT.set(new Transaction(conn));
+
+        try {
+            T result = work.call();
+            connection.commit();
+
+            return result;
+        } catch (Exception ex) {
+            rollback(conn, null);
+            throw rethrow(ex);
+        } catch (Error ex) {
+            rollback(conn, null);
+            throw ex;
+        } finally {
+            CURRENT.remove();
+
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ex) {
+                // Don't hand out a connection stuck in a transaction
+                conn.markBroken();
+            }
+
+            conn.unpin();
+            conn.close();
+        }
+    }
+
+    private <T> T callNested(Callable<T> work) {
+        Connection connection = conn.getConnection();
+        Savepoint savepoint;
+
+        try {
+            savepoint = connection.setSavepoint();
+        } catch (SQLException ex) {
+            conn.checkBroken(ex);
+
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        try {
+            T result = work.call();
+            connection.releaseSavepoint(savepoint);
+
+            return result;
+        } catch (Exception ex) {
+            rollback(conn, savepoint);
+            throw rethrow(ex);
+        } catch (Error ex) {
+            rollback(conn, savepoint);
+            throw ex;
+        }
+    }
+
+    /**
+     * Rolls back the database. Table drops the cached entities the undone
+     * work wrote.
+     */
+    private static void rollback(PooledConnection conn, Savepoint savepoint) {
+        try {
+            if (savepoint == null) {
+                conn.getConnection().rollback();
+            } else {
+                conn.getConnection().rollback(savepoint);
+            }
+        } catch (SQLException ex) {
+            conn.checkBroken(ex);
+        }
+    }
+
+    private static RuntimeException rethrow(Exception ex) {
+        if (ex instanceof RuntimeException runtime) {
+            return runtime;
+        }
+
+        if (ex instanceof SQLException) {
+            // Major error
+            return new RuntimeException(ex.getMessage());
+        }
+
+        return new RuntimeException(ex);
+    }
+}
@@ -0,0 +1,267 @@
+package tables;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the updates made by entity setters on the current thread instead of
+ * running each one immediately. Setters on the same row are merged into one
+ * UPDATE of just the changed columns, and flush() sends every pending update in
+ * one batch and one commit. Without an active unit of work setters keep
+ * updating immediately.
+ *
+ * <pre>
+ * try (UnitOfWork work = UnitOfWork.begin()) {
+ *     address.setStreet(street);
+ *     address.setCity(city);
+ *     work.flush();
+ * }
+ * </pre>
+ *
+ * Changes that have not been flushed when the unit of work is closed are
+ * dropped. The setters already changed the entity objects, so the cached
+ * entities they changed are dropped too, and the next lookup reads what was
+ * actually written.
+ *
+ * @author karsten
+ */
+public final class UnitOfWork implements AutoCloseable {
+
+    // UPDATE table SET column=expression WHERE key=?
+    private static final Pattern SINGLE_COLUMN_UPDATE = Pattern.compile(
+            "^\\s*UPDATE\\s+(\\w+)\\s+SET\\s+(\\w+)\\s*=\\s*(.+?)\\s+WHERE\\s+(\\w+)\\s*=\\s*\\?\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private interface Operation {
+
+        String query();
+
+        Object[] arguments();
+    }
+
+    /**
+     * Statement that could not be merged and is run as is
+     */
+    private record Statement(String query, Object[] arguments) implements Operation {
+
+    }
+
+    private record RowKey(String table, String keyColumn, Object key) {
+
+    }
+
+    /**
+     * Every changed column of one row
+     */
+    private static final class RowUpdate implements Operation {
+
+        private final RowKey row;
+        // column -> {value expression, value}
+        private final Map<String, Object[]> columns = new LinkedHashMap<>();
+
+        RowUpdate(RowKey row) {
+            this.row = row;
+        }
+
+        void set(String column, String expression, Object value) {
+            columns.put(column, new Object[]{expression, value});
+        }
+
+        @Override
+        public String query() {
+            StringBuilder query = new StringBuilder("UPDATE ").append(row.table()).append(" SET ");
+            String separator = "";
+
+            for (Map.Entry<String, Object[]> column : columns.entrySet()) {
+                query.append(separator).append(column.getKey()).append('=').append(column.getValue()[0]);
+                separator = ", ";
+            }
+
+            return query.append(" WHERE ").append(row.keyColumn()).append("=?").toString();
+        }
+
+        @Override
+        public Object[] arguments() {
+            Object[] arguments = new Object[columns.size() + 1];
+            int i = 0;
+
+            for (Object[] column : columns.values()) {
+                arguments[i++] = column[1];
+            }
+
+            arguments[i] = row.key();
+
+            return arguments;
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final Map<RowKey, RowUpdate> rows = new HashMap<>();
+    // Published on the change feed when the updates are flushed
+    private final Set<Change> changes = new LinkedHashSet<>();
+    private boolean closed = false;
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * Starts deferring setter updates on the current thread
+     *
+     * @return unit of work that must be closed
+     * @throws IllegalStateException a unit of work is already active
+     */
+    public static UnitOfWork begin() throws IllegalStateException {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A unit of work is already active on this thread");
+        }
+
+        UnitOfWork work = new UnitOfWork();
+        CURRENT.set(work);
+
+        return work;
+    }
+
+    /**
+     * Gets the unit of work active on the current thread
+     *
+     * @return unit of work or null if setters update immediately
+     */
+    static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Records an update to run on the next flush. Single column updates keyed
+     * by one column are merged with earlier updates to the same row.
+     *
+     * @param query update statement
+     * @param arguments statement arguments
+     */
+    void record(String query, Object[] arguments) {
+        Matcher matcher = SINGLE_COLUMN_UPDATE.matcher(query);
+
+        if (!matcher.matches() || arguments.length != 2 || countParameters(matcher.group(3)) != 1) {
+            operations.add(new Statement(query, arguments.clone()));
+            return;
+        }
+
+        RowKey key = new RowKey(matcher.group(1).toLowerCase(), matcher.group(4).toLowerCase(), arguments[1]);
+        RowUpdate row = rows.get(key);
+
+        if (row == null) {
+            row = new RowUpdate(key);
+            rows.put(key, row);
+            operations.add(row);
+        }
+
+        row.set(matcher.group(2).toLowerCase(), matcher.group(3), arguments[0]);
+    }
+
+    /**
+     * Records the cached entities the recorded updates change
+     *
+     * @param changed changed entities
+     */
+    void recordChanges(Collection<Change> changed) {
+        changes.addAll(changed);
+    }
+
+    private static int countParameters(String expression) {
+        return (int) expression.chars().filter(c -> c == '?').count();
+    }
+
+    /**
+     * Gets the number of statements the next flush will run
+     *
+     * @return pending statements
+     */
+    public int getPendingCount() {
+        return operations.size();
+    }
+
+    /**
+     * Writes every pending update in one transaction. Consecutive statements
+     * with the same SQL, such as the same columns changed on several rows, are
+     * sent as one batch.
+     */
+    public void flush() {
+        checkClosed();
+
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        // Joins a surrounding transaction, which commits the changes with the
+        // rest of its work
+        Table.inTransaction(() -> {
+            // The setters already changed the cached entities, so a failed
+            // flush must drop them
+            Table.recordWrites(changes);
+
+            List<Object[]> batch = new ArrayList<>();
+            String batchQuery = null;
+
+            for (Operation operation : operations) {
+                String query = operation.query();
+
+                if (!query.equals(batchQuery) && !batch.isEmpty()) {
+                    Table.executeBatch(batchQuery, batch);
+                    batch.clear();
+                }
+
+                batchQuery = query;
+                batch.add(operation.arguments());
+            }
+
+            Table.executeBatch(batchQuery, batch);
+            Table.publish(changes);
+        });
+
+        operations.clear();
+        rows.clear();
+        changes.clear();
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("This unit of work is already closed");
+        }
+    }
+
+    /**
+     * Ends the unit of work, dropping any changes that were not flushed along
+     * with the cached entities they changed
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        operations.clear();
+        rows.clear();
+
+        // Cached entities hold values that were never written
+        Table.evict(changes);
+        changes.clear();
+
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+}
@@ -2,10 +2,12 @@ package tables.address;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import tables.Change;
+import tables.EntityCache;
 import tables.Table;
 
 /**
@@ -16,7 +18,7 @@ import tables.Table;
  */
 public class Address extends Table {
 
-    private static Map<Integer, Address> cache = new HashMap<>();
+    private static final EntityCache<Address> cache = createCache("address", DEFAULT_CACHE_SIZE);
 
     private int addressId;
     private String street;
@@ -46,12 +48,10 @@ public class Address extends Table {
             do {
                 String type = rs.getString("type");
                 
-                if (type == null) {
-                    break;
+                if (type != null) {
+                    types.add(AddressType.valueOf(type.toUpperCase()));
                 }
-                
-                types.add(AddressType.valueOf(type.toUpperCase()));
-            } while (rs.next());
+            } while (nextRow(rs, "address_id", addressId));
         } catch (SQLException ex) {
             throw new RuntimeException(ex.getMessage());
         }
@@ -64,21 +64,42 @@ public class Address extends Table {
      * @return Address object
      */
     public static Address fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT a.address_id, street, city, state, zip_code, apt_number, country, type FROM address a "
+                    + "LEFT JOIN address_relation ar ON a.address_id = ar.address_id "
+                    + "WHERE a.address_id = ?";
+
+            ResultSet rs = select(query, key);
 
+            return new Address(rs);
+        });
+    }
+
+    /**
+     * Gets many addresses with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return addresses in the order of the IDs, without IDs that don't exist
+     */
+    public static List<Address> fromIDs(Collection<Integer> ids) {
         String query
                 = "SELECT a.address_id, street, city, state, zip_code, apt_number, country, type FROM address a "
                 + "LEFT JOIN address_relation ar ON a.address_id = ar.address_id "
-                + "WHERE a.address_id = ?";
+                + "WHERE a.address_id = ANY(?) "
+                + "ORDER BY a.address_id";
 
-        ResultSet rs = select(query, id);
-        Address result = new Address(rs);
-
-        cache.put(id, result);
+        return fromIDs(cache, ids, query, "address_id", Address::new);
+    }
 
-        return result;
+    /**
+     * Loads an Address from an ID on a virtual thread
+     *
+     * @param id id
+     * @return future Address
+     */
+    public static CompletableFuture<Address> fromIDAsync(int id) {
+        return async(() -> fromID(id));
     }
 
     /**
@@ -98,15 +119,23 @@ public class Address extends Table {
                 = "INSERT INTO address (street, city, state, country, zip_code, apt_number) "
                 + "VALUES (?, ?, ?, ?, ?, ?)";
 
-        int id = insert(insertQuery, street, city, state, country, zipCode, aptNumber);
-
         String insertType
                 = "INSERT INTO address_relation (address_id, type) "
                 + "VALUES (?, Cast(? AS address_type))";
 
-        for (AddressType type : types) {
-            insert(insertType, id, type.name().toLowerCase());
-        }
+        int id = inTransaction(() -> {
+            int addressId = insert(insertQuery, street, city, state, country, zipCode, aptNumber);
+
+            List<Object[]> rows = new ArrayList<>(types.size());
+
+            for (AddressType type : types) {
+                rows.add(new Object[]{addressId, type.name().toLowerCase()});
+            }
+
+            insertBatch(insertType, rows);
+
+            return addressId;
+        });
 
         return fromID(id);
     }
@@ -257,25 +286,27 @@ public class Address extends Table {
                         .distinct()
                         .collect(Collectors.toList());
 
-        // Removes the types that are not needed
-        for (AddressType addyType : toRemove) {
-            String query
-                    = "DELETE FROM address_relation "
-                    + "WHERE type=Cast(? AS address_type) "
-                    + "AND address_id=?";
+        inTransaction(() -> {
+            // Removes the types that are not needed
+            for (AddressType addyType : toRemove) {
+                String query
+                        = "DELETE FROM address_relation "
+                        + "WHERE type=Cast(? AS address_type) "
+                        + "AND address_id=?";
 
-            update(query, addyType.name().toLowerCase(), addressId);
-        }
+                update(query, addyType.name().toLowerCase(), addressId);
+            }
 
-        // Adds the types that are needed
-        for (AddressType addyType : toAdd) {
-            String query
-                    = "INSERT INTO address_relation (type, address_id) "
-                    + "VALUES "
-                    + "(Cast(? AS address_type), ?)";
+            // Adds the types that are needed
+            for (AddressType addyType : toAdd) {
+                String query
+                        = "INSERT INTO address_relation (type, address_id) "
+                        + "VALUES "
+                        + "(Cast(? AS address_type), ?)";
 
-            update(query, addyType.name().toLowerCase(), addressId);
-        }
+                update(query, addyType.name().toLowerCase(), addressId);
+            }
+        });
 
         this.types = new ArrayList(unqiueTypes);
     }
@@ -305,6 +336,11 @@ public class Address extends Table {
         return types.contains(type);
     }
 
+    @Override
+    protected List<Change> changes() {
+        return List.of(new Change(cache.getName(), addressId));
+    }
+
     @Override
     public String toString() {
         return "Address{" + "id=" + addressId + ", street=" + street + ", city=" + city + ", state=" + state + ", zipCode=" + zipCode + ", country=" + country + ", apartmentNumber=" + apartmentNumber + ", types=" + types + '}';
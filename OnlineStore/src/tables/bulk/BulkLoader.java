@@ -0,0 +1,170 @@
+package tables.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import tables.Change;
+import tables.Table;
+
+/**
+ * Loads large CSV files of products and customers. Rows are streamed into a
+ * temporary staging table with COPY and then merged into the real tables with
+ * a few set-based statements, all in one transaction. Existing rows with the
+ * same product name or customer email are updated instead of duplicated.
+ *
+ * @author karsten
+ */
+public class BulkLoader extends Table {
+
+    /**
+     * Outcome of a load
+     *
+     * @param table table that was loaded
+     * @param rows rows read from the input
+     * @param nanos time the whole load took
+     */
+    public record LoadResult(String table, long rows, long nanos) {
+
+        public double rowsPerSecond() {
+            return (nanos == 0) ? 0 : rows / (nanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d %s rows in %.2fs (%.0f rows/s)", rows, table, nanos / 1_000_000_000.0, rowsPerSecond());
+        }
+    }
+
+    /**
+     * Loads products from a CSV file with a header row and the columns
+     * product_name, product_description, product_quantity,
+     * current_unit_price, distributor_id, categories. Categories are category
+     * names separated by |, and missing categories are created. A product
+     * named more than once takes its last row. Categories are only added to
+     * existing products, never removed.
+     *
+     * @param csv CSV input
+     * @return load result
+     */
+    public static LoadResult loadProducts(Reader csv) {
+        long start = System.nanoTime();
+
+        long rows = inTransaction(() -> {
+            execute("CREATE TEMP TABLE product_staging ("
+                    + "line BIGSERIAL, "
+                    + "product_name VARCHAR(50), "
+                    + "product_description VARCHAR(255), "
+                    + "product_quantity INT, "
+                    + "current_unit_price NUMERIC(10, 2), "
+                    + "distributor_id INT, "
+                    + "categories TEXT"
+                    + ") ON COMMIT DROP");
+
+            long copied = copyIn("COPY product_staging (product_name, product_description, product_quantity, "
+                    + "current_unit_price, distributor_id, categories) FROM STDIN WITH (FORMAT csv, HEADER true)", csv);
+
+            // Give the planner row counts for the joins below
+            execute("ANALYZE product_staging");
+
+            execute("INSERT INTO product_type (category_name) "
+                    + "SELECT DISTINCT trim(c) FROM product_staging s, unnest(string_to_array(s.categories, '|')) c "
+                    + "WHERE trim(c) <> '' "
+                    + "ON CONFLICT (category_name) DO NOTHING");
+
+            execute("INSERT INTO product (product_name, product_description, product_quantity, current_unit_price, distributor_id) "
+                    + "SELECT DISTINCT ON (product_name) product_name, product_description, product_quantity, current_unit_price, distributor_id "
+                    + "FROM product_staging "
+                    + "ORDER BY product_name, line DESC "
+                    + "ON CONFLICT (product_name) DO UPDATE SET "
+                    + "product_description = EXCLUDED.product_description, "
+                    + "product_quantity = EXCLUDED.product_quantity, "
+                    + "current_unit_price = EXCLUDED.current_unit_price, "
+                    + "distributor_id = EXCLUDED.distributor_id "
+                    // Skip rewriting rows the feed didn't change
+                    + "WHERE (product.product_description, product.product_quantity, product.current_unit_price, product.distributor_id) "
+                    + "IS DISTINCT FROM (EXCLUDED.product_description, EXCLUDED.product_quantity, EXCLUDED.current_unit_price, EXCLUDED.distributor_id)");
+
+            execute("INSERT INTO product_category (category_id, product_id) "
+                    + "SELECT DISTINCT pt.category_id, p.product_id "
+                    + "FROM product_staging s "
+                    + "CROSS JOIN LATERAL unnest(string_to_array(s.categories, '|')) c "
+                    + "JOIN product p ON p.product_name = s.product_name "
+                    + "JOIN product_type pt ON pt.category_name = trim(c) "
+                    + "ON CONFLICT DO NOTHING");
+
+            // Other processes drop their cached copies once this commits
+            publish(List.of(Change.everything()));
+
+            return copied;
+        });
+
+        // Cached products and categories may be out of date now
+        clearCaches();
+
+        return new LoadResult("product", rows, System.nanoTime() - start);
+    }
+
+    public static LoadResult loadProducts(Path file) {
+        try (Reader csv = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return loadProducts(csv);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Loads customers from a CSV file with a header row and the columns
+     * firstname, lastname, email_address, phone_number. A customer whose
+     * email already exists is updated, and an email listed more than once
+     * takes its last row.
+     *
+     * @param csv CSV input
+     * @return load result
+     */
+    public static LoadResult loadCustomers(Reader csv) {
+        long start = System.nanoTime();
+
+        long rows = inTransaction(() -> {
+            execute("CREATE TEMP TABLE customer_staging ("
+                    + "line BIGSERIAL, "
+                    + "firstname VARCHAR(50), "
+                    + "lastname VARCHAR(50), "
+                    + "email_address VARCHAR(100), "
+                    + "phone_number VARCHAR(15)"
+                    + ") ON COMMIT DROP");
+
+            long copied = copyIn("COPY customer_staging (firstname, lastname, email_address, phone_number) "
+                    + "FROM STDIN WITH (FORMAT csv, HEADER true)", csv);
+
+            execute("INSERT INTO customer (firstname, lastname, email_address, phone_number) "
+                    + "SELECT DISTINCT ON (email_address) firstname, lastname, email_address, phone_number "
+                    + "FROM customer_staging "
+                    + "ORDER BY email_address, line DESC "
+                    + "ON CONFLICT (email_address) DO UPDATE SET "
+                    + "firstname = EXCLUDED.firstname, "
+                    + "lastname = EXCLUDED.lastname, "
+                    + "phone_number = EXCLUDED.phone_number "
+                    + "WHERE (customer.firstname, customer.lastname, customer.phone_number) "
+                    + "IS DISTINCT FROM (EXCLUDED.firstname, EXCLUDED.lastname, EXCLUDED.phone_number)");
+
+            publish(List.of(Change.everything()));
+
+            return copied;
+        });
+
+        clearCaches();
+
+        return new LoadResult("customer", rows, System.nanoTime() - start);
+    }
+
+    public static LoadResult loadCustomers(Path file) {
+        try (Reader csv = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return loadCustomers(csv);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,629 @@
+package tables.bulk;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+import tables.Change;
+import tables.Table;
+
+/**
+ * Generates a large, realistic data set for scale testing: a category tree,
+ * products with price histories, distributors, customers with addresses and
+ * payment info, orders and wishlists. How often a product is ordered or
+ * wishlisted follows a Zipf distribution, so a few products are very popular
+ * and most are rarely bought.
+ * <p>
+ * The same settings always produce the same rows. Every row is generated from
+ * a random stream seeded by the settings' seed, its table and its ID, so each
+ * table can be written in its own pass, parents before children, without
+ * holding the data set in memory. IDs continue after the highest existing ID
+ * of each table and every unique column includes the row's ID, so generated
+ * rows never collide with rows already there.
+ * <p>
+ * Rows are written with COPY in chunks where the storage engine supports it,
+ * and with batched inserts otherwise, all in one transaction.
+ *
+ * @author karsten
+ */
+public class DataGenerator extends Table {
+
+    private static final Logger LOGGER = Logger.getLogger(DataGenerator.class.getName());
+
+    /**
+     * What to generate
+     *
+     * @param seed seed of every random choice
+     * @param products number of products
+     * @param customers number of customers
+     * @param ordersPerCustomer average orders per customer
+     * @param wishlistsPerCustomer average wishlists per customer
+     * @param zipfExponent skew of product popularity, higher is more skewed
+     * @param endDate date of the newest orders and price changes, which go
+     * back two years from it
+     */
+    public record Settings(long seed, int products, int customers, double ordersPerCustomer,
+            double wishlistsPerCustomer, double zipfExponent, LocalDate endDate) {
+
+        public Settings {
+            if (products < 1 || customers < 0) {
+                throw new IllegalArgumentException("At least one product is needed, and customers can't be negative");
+            }
+
+            if (ordersPerCustomer < 0 || wishlistsPerCustomer < 0 || zipfExponent <= 0) {
+                throw new IllegalArgumentException("Averages can't be negative and the Zipf exponent must be positive");
+            }
+        }
+
+        /**
+         * Settings with three orders and half a wishlist per customer, and a
+         * fixed end date so the seed alone decides the rows
+         */
+        public Settings(long seed, int products, int customers) {
+            this(seed, products, customers, 3, 0.5, 1.1, LocalDate.of(2025, 12, 31));
+        }
+    }
+
+    /**
+     * Outcome of a generation
+     *
+     * @param rows rows written to each table, in the order they were written
+     * @param nanos time the whole generation took
+     */
+    public record GenerateResult(Map<String, Long> rows, long nanos) {
+
+        public long totalRows() {
+            return rows.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public double rowsPerSecond() {
+            return (nanos == 0) ? 0 : totalRows() / (nanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(String.format("Generated %d rows in %.2fs (%.0f rows/s)",
+                    totalRows(), nanos / 1_000_000_000.0, rowsPerSecond()));
+
+            rows.forEach((table, count) -> result.append(String.format("%n  %-22s %d", table, count)));
+
+            return result.toString();
+        }
+    }
+
+    private static final int CHUNK_SIZE = 10_000;
+    private static final int HISTORY_DAYS = 730;
+
+    // Enum columns need a cast when inserted with bound parameters
+    private static final Map<String, String> ENUM_COLUMNS = Map.of("type", "address_type", "order_status", "order_status");
+
+    // Departments, each followed by its subcategories. A product belongs to a
+    // subcategory and its department.
+    private static final String[][] CATEGORY_TREE = {
+        {"Electronics", "Phones", "Laptops", "Audio", "Cameras", "Wearables", "Accessories"},
+        {"Furniture", "Sofas", "Tables", "Chairs", "Beds", "Storage", "Lighting"},
+        {"Clothing", "Shirts", "Pants", "Jackets", "Shoes", "Dresses", "Hats"},
+        {"Toys", "Action Figures", "Puzzles", "Board Games", "Dolls", "Vehicles", "Blocks"},
+        {"Groceries", "Fruit", "Vegetables", "Dairy", "Bakery", "Snacks", "Beverages"},
+        {"Sports", "Balls", "Fitness", "Cycling", "Camping", "Water Sports", "Team Gear"},
+        {"Books", "Fiction", "History", "Science", "Cooking", "Travel", "Children"},
+        {"Garden", "Tools", "Plants", "Grills", "Patio", "Watering", "Pest Control"}
+    };
+    private static final int SUBCATEGORIES = CATEGORY_TREE[0].length - 1;
+
+    private static final String[] ADJECTIVES = {"Classic", "Compact", "Deluxe", "Eco", "Essential", "Premium",
+        "Rugged", "Sleek", "Smart", "Ultra", "Vintage", "Wireless"};
+    private static final String[] MATERIALS = {"Aluminum", "Bamboo", "Canvas", "Ceramic", "Cotton", "Glass",
+        "Leather", "Oak", "Steel", "Wool"};
+    private static final String[] NOUNS = {"Bag", "Bottle", "Chair", "Clock", "Headset", "Jacket", "Kit", "Lamp",
+        "Mat", "Organizer", "Set", "Speaker", "Stand", "Tray", "Watch"};
+    private static final String[] FIRST_NAMES = {"Ava", "Ben", "Chloe", "Daniel", "Emma", "Finn", "Grace", "Henry",
+        "Isla", "Jack", "Karsten", "Liam", "Mia", "Noah", "Olivia", "Owen", "Sofia", "Zoe"};
+    private static final String[] LAST_NAMES = {"Anderson", "Brown", "Clark", "Davis", "Garcia", "Johnson", "Larson",
+        "Lee", "Miller", "Nguyen", "Olson", "Sailer", "Smith", "Taylor", "Wilson"};
+    private static final String[] STREETS = {"Main St", "Oak Ave", "Maple Dr", "Broadway", "1st Ave N",
+        "University Dr", "Elm St", "Lake Rd", "Park Blvd", "River Rd"};
+    private static final String[][] CITIES = {{"Fargo", "ND"}, {"Grand Forks", "ND"}, {"Minneapolis", "MN"},
+        {"Moorhead", "MN"}, {"Sioux Falls", "SD"}, {"Chicago", "IL"}, {"Denver", "CO"}, {"Seattle", "WA"}};
+    private static final String[] WISHLIST_NAMES = {"Birthday", "Holidays", "Someday", "Gift Ideas", "For the Home"};
+
+    // Independent random streams, one per kind of row
+    private static final int ADDRESS = 1;
+    private static final int PRODUCT = 2;
+    private static final int PRICE_CHANGE = 3;
+    private static final int CUSTOMER = 4;
+    private static final int PAYMENT = 5;
+    private static final int ORDERS = 6;
+    private static final int ORDER = 7;
+    private static final int ORDER_ITEMS = 8;
+    private static final int WISHLISTS = 9;
+    private static final int WISHLIST_ITEMS = 10;
+
+    private final Settings settings;
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private final ZipfSampler popularity;
+    private final long popularityStep;
+    private final int distributors;
+
+    private boolean copy = true;
+
+    private int[] departmentIds;
+    private int[][] subcategoryIds;
+    private int addressBase;
+    private int distributorBase;
+    private int productBase;
+    private int customerBase;
+    private int paymentBase;
+    private int orderBase;
+    private int wishlistBase;
+    private int orderCount;
+    private int wishlistCount;
+    // Per product, its price in cents and its subcategory out of every subcategory
+    private int[] prices;
+    private short[] subcategories;
+
+    private DataGenerator(Settings settings) {
+        this.settings = settings;
+        this.popularity = new ZipfSampler(settings.products(), settings.zipfExponent());
+        this.popularityStep = coprimeStep(settings.products());
+        this.distributors = Math.max(1, settings.products() / 1000);
+    }
+
+    /**
+     * Generates a data set and adds it to the store
+     *
+     * @param settings what to generate
+     * @return rows written to each table
+     */
+    public static GenerateResult generate(Settings settings) {
+        long start = System.nanoTime();
+        DataGenerator generator = new DataGenerator(settings);
+
+        inTransaction(() -> {
+            generator.run();
+
+            // Other processes drop their cached copies once this commits
+            publish(List.of(Change.everything()));
+        });
+
+        // Cached entities may be missing new relationships
+        clearCaches();
+
+        return new GenerateResult(generator.counts, System.nanoTime() - start);
+    }
+
+    private void run() {
+        addressBase = maxId("address", "address_id");
+        distributorBase = maxId("distributor", "distributor_id");
+        productBase = maxId("product", "product_id");
+        customerBase = maxId("customer", "customer_id");
+        paymentBase = maxId("payment_info", "payment_id");
+        orderBase = maxId("customer_order", "order_id");
+        wishlistBase = maxId("wishlist", "wishlist_id");
+
+        writeCategories();
+        writeAddresses();
+        writeDistributors();
+        writeProducts();
+        writePriceChanges();
+        writeCustomers();
+        writeOrders();
+        writeWishlists();
+
+        if (copy) {
+            // COPY wrote the IDs itself, so move each sequence past them
+            fixSequence("address", "address_id");
+            fixSequence("distributor", "distributor_id");
+            fixSequence("product_type", "category_id");
+            fixSequence("product", "product_id");
+            fixSequence("customer", "customer_id");
+            fixSequence("payment_info", "payment_id");
+            fixSequence("customer_order", "order_id");
+            fixSequence("wishlist", "wishlist_id");
+
+            for (String table : counts.keySet()) {
+                execute("ANALYZE " + table);
+            }
+        }
+    }
+
+    private void writeCategories() {
+        Map<String, Integer> existing = new HashMap<>();
+
+        try {
+            ResultSet rs = select("SELECT category_id, category_name FROM product_type");
+
+            do {
+                existing.put(rs.getString("category_name"), rs.getInt("category_id"));
+            } while (rs.next());
+        } catch (IllegalArgumentException ex) {
+            // No categories yet
+        } catch (SQLException ex) {
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        int[] next = {maxId("product_type", "category_id")};
+        departmentIds = new int[CATEGORY_TREE.length];
+        subcategoryIds = new int[CATEGORY_TREE.length][SUBCATEGORIES];
+
+        try (Rows rows = new Rows("product_type", "category_id", "category_name")) {
+            for (int d = 0; d < CATEGORY_TREE.length; d++) {
+                departmentIds[d] = category(rows, existing, next, CATEGORY_TREE[d][0]);
+
+                for (int s = 0; s < SUBCATEGORIES; s++) {
+                    subcategoryIds[d][s] = category(rows, existing, next, CATEGORY_TREE[d][0] + " > " + CATEGORY_TREE[d][s + 1]);
+                }
+            }
+        }
+    }
+
+    private static int category(Rows rows, Map<String, Integer> existing, int[] next, String name) {
+        Integer id = existing.get(name);
+
+        if (id != null) {
+            return id;
+        }
+
+        rows.add(++next[0], name);
+
+        return next[0];
+    }
+
+    private void writeAddresses() {
+        // Distributors' addresses first, then one per customer
+        int addresses = distributors + settings.customers();
+
+        try (Rows rows = new Rows("address", "address_id", "street", "city", "state", "zip_code", "apt_number")) {
+            for (int i = 1; i <= addresses; i++) {
+                SplittableRandom random = random(ADDRESS, i);
+                String[] city = pick(random, CITIES);
+                String apartment = (random.nextInt(5) == 0) ? "Apt " + (1 + random.nextInt(400)) : null;
+
+                rows.add(addressBase + i, (1 + random.nextInt(9999)) + " " + pick(random, STREETS),
+                        city[0], city[1], String.format("%05d", random.nextInt(100_000)), apartment);
+            }
+        }
+
+        try (Rows rows = new Rows("address_relation", "address_id", "type")) {
+            for (int i = 1; i <= distributors; i++) {
+                rows.add(addressBase + i, "distributor");
+            }
+
+            for (int c = 1; c <= settings.customers(); c++) {
+                rows.add(customerAddress(c), "billing");
+                rows.add(customerAddress(c), "shipping");
+            }
+        }
+    }
+
+    private int customerAddress(int customer) {
+        return addressBase + distributors + customer;
+    }
+
+    private void writeDistributors() {
+        try (Rows rows = new Rows("distributor", "distributor_id", "distributor_phone", "address_id")) {
+            for (int i = 1; i <= distributors; i++) {
+                rows.add(distributorBase + i, String.format("800%07d", distributorBase + i), addressBase + i);
+            }
+        }
+    }
+
+    private void writeProducts() {
+        prices = new int[settings.products()];
+        subcategories = new short[settings.products()];
+
+        try (Rows rows = new Rows("product", "product_id", "product_name", "product_description",
+                "product_quantity", "current_unit_price", "distributor_id")) {
+            for (int i = 0; i < settings.products(); i++) {
+                SplittableRandom random = random(PRODUCT, i);
+                int subcategory = random.nextInt(CATEGORY_TREE.length * SUBCATEGORIES);
+                String adjective = pick(random, ADJECTIVES);
+                String material = pick(random, MATERIALS);
+                String noun = pick(random, NOUNS);
+                int id = productBase + 1 + i;
+
+                // Log-uniform between $0.99 and $999.99, so cheap products are common
+                prices[i] = (int) Math.exp(Math.log(99) + random.nextDouble() * (Math.log(99_999) - Math.log(99)));
+                subcategories[i] = (short) subcategory;
+
+                rows.add(id, adjective + " " + material + " " + noun + " " + id,
+                        String.format("%s %s %s from our %s range", adjective, material.toLowerCase(), noun.toLowerCase(),
+                                CATEGORY_TREE[subcategory / SUBCATEGORIES][subcategory % SUBCATEGORIES + 1].toLowerCase()),
+                        (random.nextInt(10) == 0) ? 0 : 1 + random.nextInt(500), money(prices[i]),
+                        distributorBase + 1 + random.nextInt(distributors));
+            }
+        }
+
+        try (Rows rows = new Rows("product_category", "category_id", "product_id")) {
+            for (int i = 0; i < settings.products(); i++) {
+                int department = subcategories[i] / SUBCATEGORIES;
+
+                rows.add(subcategoryIds[department][subcategories[i] % SUBCATEGORIES], productBase + 1 + i);
+                rows.add(departmentIds[department], productBase + 1 + i);
+            }
+        }
+    }
+
+    private void writePriceChanges() {
+        try (Rows rows = new Rows("product_price_change", "product_id", "new_product_price", "old_product_price",
+                "price_change_date")) {
+            for (int i = 0; i < settings.products(); i++) {
+                SplittableRandom random = random(PRICE_CHANGE, i);
+                int changes = random.nextInt(4);
+                int[] history = new int[changes + 1];
+                long[] days = new long[changes];
+
+                // Walk back from today's price, then write the changes oldest first
+                history[changes] = prices[i];
+
+                for (int c = changes - 1; c >= 0; c--) {
+                    history[c] = Math.max(1, (int) (history[c + 1] * (0.8 + 0.4 * random.nextDouble())));
+                }
+
+                for (int c = 0; c < changes; c++) {
+                    days[c] = random.nextInt(HISTORY_DAYS);
+                }
+
+                Arrays.sort(days);
+
+                for (int c = 0; c < changes; c++) {
+                    LocalDate date = settings.endDate().minusDays(days[changes - 1 - c]);
+                    Timestamp time = Timestamp.valueOf(date.atTime(random.nextInt(24), random.nextInt(60)));
+
+                    rows.add(productBase + 1 + i, money(history[c + 1]), money(history[c]), time);
+                }
+            }
+        }
+    }
+
+    private void writeCustomers() {
+        try (Rows rows = new Rows("customer", "customer_id", "firstname", "lastname", "email_address", "phone_number")) {
+            for (int c = 1; c <= settings.customers(); c++) {
+                SplittableRandom random = random(CUSTOMER, c);
+                String first = pick(random, FIRST_NAMES);
+                String last = pick(random, LAST_NAMES);
+                int id = customerBase + c;
+
+                rows.add(id, first, last, (first + "." + last + "." + id + "@example.com").toLowerCase(),
+                        String.format("555%07d", random.nextInt(10_000_000)));
+            }
+        }
+
+        try (Rows rows = new Rows("payment_info", "payment_id", "billing_address_id", "firstname", "lastname",
+                "card_number", "exp_date", "cvv")) {
+            for (int c = 1; c <= settings.customers(); c++) {
+                // Same draws as the customer, so the card holder is the customer
+                SplittableRandom names = random(CUSTOMER, c);
+                SplittableRandom random = random(PAYMENT, c);
+                LocalDate expires = settings.endDate().withDayOfMonth(1).plusMonths(1 + random.nextInt(48));
+
+                rows.add(paymentBase + c, customerAddress(c), pick(names, FIRST_NAMES), pick(names, LAST_NAMES),
+                        100_000_000 + random.nextInt(900_000_000), Date.valueOf(expires), 100 + random.nextInt(900));
+            }
+        }
+    }
+
+    private void writeOrders() {
+        try (Rows rows = new Rows("customer_order", "order_id", "customer_id", "payment_id", "shipping_id",
+                "order_status", "order_date")) {
+            for (int c = 1; c <= settings.customers(); c++) {
+                int orders = count(random(ORDERS, c), settings.ordersPerCustomer());
+
+                for (int o = 0; o < orders; o++) {
+                    int id = orderBase + ++orderCount;
+                    SplittableRandom random = random(ORDER, id);
+                    int roll = random.nextInt(10);
+                    String status = (roll == 0) ? "pending" : (roll < 3) ? "shipped" : "delivered";
+
+                    rows.add(id, customerBase + c, paymentBase + c, customerAddress(c), status,
+                            Date.valueOf(settings.endDate().minusDays(random.nextInt(HISTORY_DAYS))));
+                }
+            }
+        }
+
+        try (Rows rows = new Rows("order_item", "order_id", "product_id", "unit_price", "quantity")) {
+            for (int k = 1; k <= orderCount; k++) {
+                SplittableRandom random = random(ORDER_ITEMS, orderBase + k);
+
+                for (int product : popularProducts(random, 1 + random.nextInt(5))) {
+                    rows.add(orderBase + k, productBase + 1 + product, money(prices[product]), 1 + random.nextInt(3));
+                }
+            }
+        }
+    }
+
+    private void writeWishlists() {
+        try (Rows rows = new Rows("wishlist", "wishlist_id", "customer_id", "wishlist_name")) {
+            for (int c = 1; c <= settings.customers(); c++) {
+                SplittableRandom random = random(WISHLISTS, c);
+                int wishlists = count(random, settings.wishlistsPerCustomer());
+
+                for (int w = 0; w < wishlists; w++) {
+                    rows.add(wishlistBase + ++wishlistCount, customerBase + c, pick(random, WISHLIST_NAMES));
+                }
+            }
+        }
+
+        try (Rows rows = new Rows("wishlist_items", "wishlist_id", "product_id", "quantity")) {
+            for (int k = 1; k <= wishlistCount; k++) {
+                SplittableRandom random = random(WISHLIST_ITEMS, wishlistBase + k);
+
+                for (int product : popularProducts(random, 1 + random.nextInt(5))) {
+                    rows.add(wishlistBase + k, productBase + 1 + product, 1 + random.nextInt(3));
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks distinct products by popularity
+     *
+     * @return product indexes
+     */
+    private List<Integer> popularProducts(SplittableRandom random, int count) {
+        List<Integer> products = new ArrayList<>(count);
+
+        // Small catalogs may not have enough products
+        for (int tries = 0; products.size() < Math.min(count, settings.products()) && tries < count * 10; tries++) {
+            long rank = popularity.sample(random);
+            // Spread popular ranks over the catalog instead of the first IDs
+            int product = (int) ((rank - 1) * popularityStep % settings.products());
+
+            if (!products.contains(product)) {
+                products.add(product);
+            }
+        }
+
+        return products;
+    }
+
+    private static long coprimeStep(int n) {
+        // About n / golden ratio apart, so neighboring ranks land far apart
+        long step = Math.max(1, (long) (n * 0.6180339887));
+
+        while (gcd(step, n) != 1) {
+            step++;
+        }
+
+        return step;
+    }
+
+    private static long gcd(long a, long b) {
+        return (b == 0) ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Draws a count that averages the given value
+     */
+    private static int count(SplittableRandom random, double average) {
+        return random.nextInt((int) Math.round(2 * average) + 1);
+    }
+
+    private SplittableRandom random(int stream, long id) {
+        return new SplittableRandom(settings.seed() * 0x9E3779B97F4A7C15L + stream * 0xBF58476D1CE4E5B9L + id);
+    }
+
+    private static <T> T pick(SplittableRandom random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static BigDecimal money(int cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static int maxId(String table, String column) {
+        try {
+            ResultSet rs = select("SELECT " + column + " FROM " + table + " ORDER BY " + column + " DESC LIMIT 1");
+
+            return rs.getInt(column);
+        } catch (IllegalArgumentException ex) {
+            // Empty table
+            return 0;
+        } catch (SQLException ex) {
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    private static void fixSequence(String table, String column) {
+        select("SELECT setval(pg_get_serial_sequence('" + table + "', '" + column + "'), MAX(" + column + ")) FROM " + table);
+    }
+
+    private void write(Rows rows) {
+        if (copy) {
+            try {
+                copyIn("COPY " + rows.table + " (" + String.join(", ", rows.columns) + ") FROM STDIN (FORMAT csv)",
+                        new StringReader(toCsv(rows.chunk)));
+                return;
+            } catch (UnsupportedOperationException ex) {
+                // The engine can't COPY, so insert in batches from now on
+                copy = false;
+            }
+        }
+
+        StringBuilder query = new StringBuilder("INSERT INTO ").append(rows.table).append(" (")
+                .append(String.join(", ", rows.columns)).append(") VALUES (");
+
+        for (int i = 0; i < rows.columns.length; i++) {
+            String type = ENUM_COLUMNS.get(rows.columns[i]);
+
+            query.append((i == 0) ? "" : ", ").append((type == null) ? "?" : "Cast(? AS " + type + ")");
+        }
+
+        executeBatch(query.append(")").toString(), rows.chunk);
+    }
+
+    private static String toCsv(List<Object[]> rows) {
+        StringBuilder csv = new StringBuilder(rows.size() * 64);
+
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+
+                if (row[i] instanceof String text) {
+                    // Quoted, so an empty string isn't read as NULL
+                    csv.append('"').append(text.replace("\"", "\"\"")).append('"');
+                } else if (row[i] != null) {
+                    csv.append(row[i]);
+                }
+            }
+
+            csv.append('\n');
+        }
+
+        return csv.toString();
+    }
+
+    /**
+     * Rows for one table, written a chunk at a time
+     */
+    private final class Rows implements AutoCloseable {
+
+        private final String table;
+        private final String[] columns;
+        private final List<Object[]> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        Rows(String table, String... columns) {
+            this.table = table;
+            this.columns = columns;
+        }
+
+        void add(Object... values) {
+            chunk.add(values);
+
+            if (chunk.size() == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            write(this);
+            counts.merge(table, (long) chunk.size(), Long::sum);
+            chunk.clear();
+        }
+
+        @Override
+        public void close() {
+            flush();
+            LOGGER.fine(() -> "Generated " + counts.getOrDefault(table, 0L) + " " + table + " rows");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package tables.bulk;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+import tables.Table;
+
+/**
+ * Exports orders and their items as gzip compressed CSV. The database writes
+ * the CSV itself with COPY ... TO STDOUT and the rows are compressed as they
+ * arrive, so memory use stays the same however many orders are exported and
+ * no Order or OrderItem objects are created.
+ *
+ * @author karsten
+ */
+public class OrderExport extends Table {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Outcome of an export
+     *
+     * @param rows CSV rows written, not counting the header
+     * @param bytes size of the compressed file
+     * @param nanos time the export took
+     */
+    public record ExportResult(long rows, long bytes, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("Exported %d order rows (%d bytes compressed) in %.2fs", rows, bytes, nanos / 1_000_000_000.0);
+        }
+    }
+
+    /**
+     * Writes one row per order item, with the order's columns repeated on each
+     * row. Orders without items get one row with empty item columns.
+     *
+     * @param file gzip file to create or replace
+     * @param from first order_date to include, or null for no lower bound
+     * @param to last order_date to include, or null for no upper bound
+     * @return export result
+     */
+    public static ExportResult exportOrders(Path file, LocalDate from, LocalDate to) {
+        long start = System.nanoTime();
+        long rows;
+
+        // Closing the stream writes the gzip trailer before the file is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), BUFFER_SIZE)) {
+            rows = copyOut(buildQuery(from, to), out);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        try {
+            return new ExportResult(rows, Files.size(file), System.nanoTime() - start);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    /**
+     * COPY can't take bind parameters, so the dates are written into the
+     * query. LocalDate only formats as yyyy-mm-dd, so this is safe.
+     */
+    private static String buildQuery(LocalDate from, LocalDate to) {
+        StringBuilder where = new StringBuilder("TRUE");
+
+        if (from != null) {
+            where.append(" AND co.order_date >= DATE '").append(from).append('\'');
+        }
+
+        if (to != null) {
+            where.append(" AND co.order_date < DATE '").append(to.plusDays(1)).append('\'');
+        }
+
+        return "COPY ("
+                + "SELECT co.order_id, co.customer_id, co.order_date, co.order_status, co.payment_id, co.shipping_id, "
+                + "oi.order_item_id, oi.product_id, oi.quantity, oi.unit_price, oi.quantity * oi.unit_price AS line_total "
+                + "FROM customer_order co "
+                + "LEFT JOIN order_item oi ON oi.order_id = co.order_id "
+                + "WHERE " + where + " "
+                + "ORDER BY co.order_id, oi.order_item_id"
+                + ") TO STDOUT WITH (FORMAT csv, HEADER true)";
+    }
+}
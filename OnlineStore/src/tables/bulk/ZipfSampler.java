@@ -0,0 +1,75 @@
+package tables.bulk;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks 1..n where rank k comes up in proportion to 1 / k^exponent, so a
+ * few ranks are very common and most are rare. Uses rejection-inversion
+ * (Hörmann and Derflinger, 1996), which needs no table, so n can be in the
+ * millions.
+ *
+ * @author karsten
+ */
+final class ZipfSampler {
+
+    private final long n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    ZipfSampler(long n, double exponent) {
+        if (n < 1 || exponent <= 0) {
+            throw new IllegalArgumentException("Zipf needs n >= 1 and a positive exponent");
+        }
+
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * Draws a rank
+     *
+     * @param random random source
+     * @return rank between 1 and n, 1 being the most common
+     */
+    long sample(SplittableRandom random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            long k = Math.max(1, Math.min(n, (long) (x + 0.5)));
+
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+
+        return expm1OverX((1 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = Math.max(-1, x * (1 - exponent));
+
+        return Math.exp(log1pOverX(t) * x);
+    }
+
+    private static double expm1OverX(double x) {
+        // Series near 0, where expm1(x) / x loses precision
+        return (Math.abs(x) > 1e-8) ? Math.expm1(x) / x : 1 + x / 2 * (1 + x / 3 * (1 + x / 4));
+    }
+
+    private static double log1pOverX(double x) {
+        return (Math.abs(x) > 1e-8) ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - x / 4));
+    }
+}
@@ -2,9 +2,14 @@ package tables.customer;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
+import tables.Change;
+import tables.EntityCache;
+import tables.LazyList;
 import tables.Table;
 import tables.order.Order;
 import tables.order.OrderStatus;
@@ -17,7 +22,9 @@ import tables.wishlist.Wishlist;
  */
 public class Customer extends Table {
 
-    private static final Map<Integer, Customer> cache = new HashMap<>();
+    // Weighed by the entities it holds
+    private static final EntityCache<Customer> cache = createCache("customer", 10 * DEFAULT_CACHE_SIZE,
+            customer -> 1 + customer.orders.size() + customer.wishlists.size());
 
     private int id;
     private String firstname;
@@ -27,7 +34,14 @@ public class Customer extends Table {
     private List<Order> orders;
     private List<Wishlist> wishlists;
 
-    protected Customer(ResultSet rs) {
+    /**
+     * Creates a customer from its row, which holds its order IDs in an
+     * order_ids array
+     *
+     * @param rs customer row
+     * @param wishlistIds IDs of the customer's wishlists
+     */
+    protected Customer(ResultSet rs, List<Integer> wishlistIds) {
         try {
             id = rs.getInt("customer_id");
             firstname = rs.getString("firstname");
@@ -35,32 +49,9 @@ public class Customer extends Table {
             email = rs.getString("email_address");
             phone = rs.getString("phone_number");
 
-            // Get items
-            orders = new ArrayList<>();
-            wishlists = new ArrayList<>();
-
-            do {
-                int orderId = rs.getInt("order_id");
-                int wishlistId = rs.getInt("wishlist_id");
-
-                // Value is null
-                if (orderId != 0) {
-                    Order order = Order.fromID(orderId);
-
-                    if (!orders.contains(order)) {
-                        orders.add(order);
-                    }
-                }
-
-                if (wishlistId != 0) {
-                    Wishlist wishlist = Wishlist.fromID(wishlistId);
-
-                    if (!wishlists.contains(wishlist)) {
-                        wishlists.add(wishlist);
-                    }
-                }
-
-            } while (rs.next());
+            // Loaded when first used, so showing a customer doesn't load their history
+            orders = new LazyList<>(idArray(rs, "order_ids"), Order::fromIDs);
+            wishlists = new LazyList<>(wishlistIds, Wishlist::fromIDs);
 
         } catch (SQLException ex) {
             throw new RuntimeException(ex.getMessage());
@@ -74,23 +65,83 @@ public class Customer extends Table {
      * @return Customer
      */
     public static Customer fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            Customer customer = load(List.of(key)).get(key);
 
-        String query
-                = "SELECT c.customer_id, firstname, lastname, email_address, phone_number, co.order_id, w.wishlist_id "
-                + "FROM customer c "
-                + "LEFT JOIN customer_order co ON c.customer_id = co.customer_id "
-                + "LEFT JOIN wishlist w ON c.customer_id = w.customer_id "
-                + "WHERE c.customer_id=?";
+            if (customer == null) {
+                throw new IllegalArgumentException("ResultSet is empty");
+            }
 
-        ResultSet rs = select(query, id);
-        Customer result = new Customer(rs);
+            return customer;
+        });
+    }
 
-        cache.put(id, result);
+    /**
+     * Gets many customers with two queries for all that aren't cached
+     *
+     * @param ids ids
+     * @return customers in the order of the IDs, without IDs that don't exist
+     */
+    public static List<Customer> fromIDs(Collection<Integer> ids) {
+        return cache.getAll(ids, Customer::load);
+    }
 
-        return result;
+    /**
+     * Loads customers with one row each. Joining both orders and wishlists
+     * would return a row for every pair of them, so the orders are aggregated
+     * on the customer row and the wishlists fetched by a second query.
+     */
+    private static Map<Integer, Customer> load(List<Integer> ids) {
+        String customerQuery
+                = "SELECT c.customer_id, firstname, lastname, email_address, phone_number, "
+                + "array_agg(DISTINCT co.order_id) AS order_ids "
+                + "FROM customer c "
+                + "LEFT JOIN customer_order co ON c.customer_id = co.customer_id "
+                + "WHERE c.customer_id = ANY(?) "
+                + "GROUP BY c.customer_id";
+        String wishlistQuery
+                = "SELECT customer_id, array_agg(DISTINCT wishlist_id) AS wishlist_ids FROM wishlist "
+                + "WHERE customer_id = ANY(?) "
+                + "GROUP BY customer_id";
+
+        Map<Integer, Customer> loaded = new HashMap<>();
+
+        for (int from = 0; from < ids.size(); from += ID_CHUNK_SIZE) {
+            Object chunk = ids.subList(from, Math.min(ids.size(), from + ID_CHUNK_SIZE)).toArray(Integer[]::new);
+            ResultSet rs;
+
+            try {
+                rs = select(customerQuery, chunk);
+            } catch (IllegalArgumentException ex) {
+                // None of them exist
+                continue;
+            }
+
+            Map<Integer, List<Integer>> wishlistIds = new HashMap<>();
+
+            try {
+                ResultSet wishlists = select(wishlistQuery, chunk);
+
+                do {
+                    wishlistIds.put(wishlists.getInt("customer_id"), idArray(wishlists, "wishlist_ids"));
+                } while (wishlists.next());
+            } catch (IllegalArgumentException ex) {
+                // None of them have wishlists
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex.getMessage());
+            }
+
+            try {
+                do {
+                    int id = rs.getInt("customer_id");
+                    loaded.put(id, new Customer(rs, wishlistIds.getOrDefault(id, List.of())));
+                } while (rs.next());
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex.getMessage());
+            }
+        }
+
+        return loaded;
     }
 
     /**
@@ -113,17 +164,21 @@ public class Customer extends Table {
     }
 
     /**
-     * Deletes the Customer
+     * Deletes the Customer along with their orders and wishlists in one
+     * transaction
      */
     public void deleteCustomer() {
-        clearOrders();
-        clearWishlists();
+        inTransaction(() -> {
+            clearOrders();
+            clearWishlists();
 
-        String query
-                = "DELETE FROM Customer "
-                + "WHERE customer_id=?";
+            String query
+                    = "DELETE FROM Customer "
+                    + "WHERE customer_id=?";
 
-        delete(query, id);
+            delete(query, id);
+            cache.remove(id);
+        });
     }
     
     public void clearOrders() {
@@ -144,7 +199,32 @@ public class Customer extends Table {
 
         ResultSet rs = select(query);
 
-        return mapIDs(rs, Customer::fromID);
+        return fromIDs(ids(rs));
+    }
+
+    /**
+     * Lazily streams all customers without holding every customer in memory.
+     * Each customer is built from its own row and isn't cached. The stream
+     * must be closed.
+     *
+     * @return stream of all customers
+     */
+    public static Stream<Customer> streamAllCustomers() {
+        // Both relations are subqueries on the customer row, as the cursor's
+        // connection can't run the second query load() uses
+        String query
+                = "SELECT c.customer_id, firstname, lastname, email_address, phone_number, "
+                + "ARRAY(SELECT order_id FROM customer_order WHERE customer_id = c.customer_id) AS order_ids, "
+                + "ARRAY(SELECT wishlist_id FROM wishlist WHERE customer_id = c.customer_id) AS wishlist_ids "
+                + "FROM customer c";
+
+        return stream(query, rs -> {
+            try {
+                return new Customer(rs, idArray(rs, "wishlist_ids"));
+            } catch (SQLException ex) {
+                throw new RuntimeException(ex.getMessage());
+            }
+        });
     }
 
     public int getID() {
@@ -211,6 +291,15 @@ public class Customer extends Table {
     public List<Order> getOrders() {
         return new ArrayList<>(orders);
     }
+
+    /**
+     * Gets the number of orders without loading them
+     *
+     * @return number of orders
+     */
+    public int getOrderCount() {
+        return orders.size();
+    }
     
     public void addOrder(int paymentId, int shippingId, OrderStatus status) {
         orders.add(Order.createOrder(id, paymentId, shippingId, status));
@@ -225,6 +314,15 @@ public class Customer extends Table {
     public List<Wishlist> getWishlists() {
         return new ArrayList<>(wishlists);
     }
+
+    /**
+     * Gets the number of wishlists without loading them
+     *
+     * @return number of wishlists
+     */
+    public int getWishlistCount() {
+        return wishlists.size();
+    }
     
     public void addWishlist(String name) {
         wishlists.add(Wishlist.createWishlist(id, name));
@@ -236,6 +334,11 @@ public class Customer extends Table {
         wishlist.deleteWishlist();
     }
 
+    @Override
+    protected List<Change> changes() {
+        return List.of(new Change(cache.getName(), id));
+    }
+
     @Override
     public String toString() {
         return "Customer{" + "id=" + id + ", firstname=" + firstname + ", lastname=" + lastname + ", phone=" + phone + ", email=" + email + ", orders=" + orders + ", wishlists=" + wishlists + '}';
@@ -2,9 +2,11 @@ package tables.distributor;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import tables.Change;
+import tables.EntityCache;
+import tables.LazyList;
 import tables.Table;
 import tables.address.Address;
 import tables.product.Product;
@@ -16,7 +18,9 @@ import tables.product.Product;
  */
 public class Distributor extends Table {
 
-    private static final Map<Integer, Distributor> cache = new HashMap<>();
+    // Weighed by the entities it holds
+    private static final EntityCache<Distributor> cache = createCache("distributor", 10 * DEFAULT_CACHE_SIZE,
+            distributor -> 1 + distributor.products.size());
 
     private int id;
     private String phone;
@@ -30,17 +34,18 @@ public class Distributor extends Table {
             addressID = rs.getInt("address_id");
 
             // Get items
-            products = new ArrayList<>();
+            List<Integer> productIds = new ArrayList<>();
+
             do {
-                int id = rs.getInt("product_id");
+                int productId = rs.getInt("product_id");
 
                 // Value is null
-                if (id == 0) {
-                    break;
+                if (productId != 0) {
+                    productIds.add(productId);
                 }
+            } while (nextRow(rs, "distributor_id", id));
 
-                products.add(Product.fromID(id));
-            } while (rs.next());
+            products = new LazyList<>(productIds, Product::fromIDs);
         } catch (SQLException ex) {
             throw new RuntimeException(ex.getMessage());
         }
@@ -53,22 +58,35 @@ public class Distributor extends Table {
      * @return Distributor
      */
     public static Distributor fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT d.distributor_id, distributor_phone, address_id, p.product_id "
+                    + "FROM distributor d "
+                    + "LEFT JOIN product p ON p.distributor_id = d.distributor_id "
+                    + "WHERE d.distributor_id=? "
+                    + "ORDER BY p.product_id";
 
+            ResultSet rs = select(query, key);
+
+            return new Distributor(rs);
+        });
+    }
+
+    /**
+     * Gets many distributors with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return distributors in the order of the IDs, without IDs that don't exist
+     */
+    public static List<Distributor> fromIDs(Collection<Integer> ids) {
         String query
                 = "SELECT d.distributor_id, distributor_phone, address_id, p.product_id "
                 + "FROM distributor d "
                 + "LEFT JOIN product p ON p.distributor_id = d.distributor_id "
-                + "WHERE d.distributor_id=?";
-
-        ResultSet rs = select(query, id);
-        Distributor result = new Distributor(rs);
-
-        cache.put(id, result);
+                + "WHERE d.distributor_id = ANY(?) "
+                + "ORDER BY d.distributor_id, p.product_id";
 
-        return result;
+        return fromIDs(cache, ids, query, "distributor_id", Distributor::new);
     }
 
     /**
@@ -106,7 +124,7 @@ public class Distributor extends Table {
 
         ResultSet rs = select(query);
 
-        return mapIDs(rs, Distributor::fromID);
+        return fromIDs(ids(rs));
     }
 
     /**
@@ -120,6 +138,7 @@ public class Distributor extends Table {
                 + "WHERE customer_id=?";
 
         delete(query, id);
+        cache.remove(id);
     }
 
     public int getID() {
@@ -180,6 +199,11 @@ public class Distributor extends Table {
         }
     }
 
+    @Override
+    protected List<Change> changes() {
+        return List.of(new Change(cache.getName(), id));
+    }
+
     @Override
     public String toString() {
         return "Distributor{" + "id=" + id + ", phone=" + phone + ", addressID=" + addressID + ", products=" + products + '}';
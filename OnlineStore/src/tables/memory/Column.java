@@ -0,0 +1,163 @@
+package tables.memory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Column of an in-memory table. Values are converted to the column's type when
+ * they are stored, the way PostgreSQL casts bound parameters.
+ *
+ * @author karsten
+ */
+final class Column {
+
+    enum Type {
+        INT(Types.INTEGER),
+        NUMERIC(Types.NUMERIC),
+        TEXT(Types.VARCHAR),
+        ENUM(Types.VARCHAR),
+        DATE(Types.DATE),
+        TIMESTAMP(Types.TIMESTAMP),
+        BOOLEAN(Types.BOOLEAN);
+
+        private final int sqlType;
+
+        Type(int sqlType) {
+            this.sqlType = sqlType;
+        }
+
+        int sqlType() {
+            return sqlType;
+        }
+    }
+
+    private final String name;
+    private final Type type;
+    private final boolean notNull;
+    private final int length;
+    private final int scale;
+    private final List<String> values;
+    private final Supplier<Object> defaultValue;
+
+    private Column(String name, Type type, boolean notNull, int length, int scale, List<String> values, Supplier<Object> defaultValue) {
+        this.name = name;
+        this.type = type;
+        this.notNull = notNull;
+        this.length = length;
+        this.scale = scale;
+        this.values = values;
+        this.defaultValue = defaultValue;
+    }
+
+    static Column integer(String name, boolean notNull) {
+        return new Column(name, Type.INT, notNull, 0, 0, null, null);
+    }
+
+    static Column numeric(String name, int scale) {
+        return new Column(name, Type.NUMERIC, true, 0, scale, null, null);
+    }
+
+    static Column text(String name, int length, boolean notNull) {
+        return new Column(name, Type.TEXT, notNull, length, 0, null, null);
+    }
+
+    static Column enumeration(String name, boolean notNull, String... values) {
+        return new Column(name, Type.ENUM, notNull, 0, 0, List.of(values), null);
+    }
+
+    static Column date(String name) {
+        return new Column(name, Type.DATE, true, 0, 0, null, null);
+    }
+
+    static Column timestamp(String name) {
+        return new Column(name, Type.TIMESTAMP, true, 0, 0, null, null);
+    }
+
+    Column withDefault(Supplier<Object> defaultValue) {
+        return new Column(name, type, notNull, length, scale, values, defaultValue);
+    }
+
+    static Supplier<Object> today() {
+        return () -> Date.valueOf(LocalDate.now());
+    }
+
+    static Supplier<Object> now() {
+        return () -> Timestamp.valueOf(LocalDateTime.now());
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    boolean isNotNull() {
+        return notNull;
+    }
+
+    Object getDefault() {
+        return (defaultValue == null) ? null : defaultValue.get();
+    }
+
+    /**
+     * Converts a value to this column's type
+     *
+     * @param value value to store or compare with
+     * @return converted value
+     */
+    Object convert(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        return switch (type) {
+            case INT ->
+                (value instanceof Number number) ? Integer.valueOf(number.intValue()) : Integer.valueOf(value.toString().trim());
+            case NUMERIC -> {
+                BigDecimal decimal = (value instanceof BigDecimal big) ? big
+                        : (value instanceof Double || value instanceof Float) ? BigDecimal.valueOf(((Number) value).doubleValue())
+                        : new BigDecimal(value.toString().trim());
+
+                yield decimal.setScale(scale, RoundingMode.HALF_UP);
+            }
+            case TEXT -> {
+                String text = value.toString();
+
+                if (length > 0 && text.length() > length) {
+                    throw new RuntimeException("value too long for type character varying(" + length + ")");
+                }
+
+                yield text;
+            }
+            case ENUM -> {
+                String text = value.toString();
+
+                if (!values.contains(text)) {
+                    throw new RuntimeException("invalid input value for enum " + name + ": \"" + text + "\"");
+                }
+
+                yield text;
+            }
+            case DATE ->
+                (value instanceof Date date) ? date
+                : (value instanceof java.util.Date date) ? new Date(date.getTime())
+                : (value instanceof LocalDate local) ? Date.valueOf(local)
+                : Date.valueOf(value.toString().trim());
+            case TIMESTAMP ->
+                (value instanceof Timestamp time) ? time
+                : (value instanceof java.util.Date date) ? new Timestamp(date.getTime())
+                : Timestamp.valueOf(value.toString().trim());
+            case BOOLEAN ->
+                (value instanceof Boolean bool) ? bool : Boolean.valueOf(value.toString().trim());
+        };
+    }
+}
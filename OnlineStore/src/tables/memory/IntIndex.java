@@ -0,0 +1,119 @@
+package tables.memory;
+
+import java.util.Arrays;
+
+/**
+ * Index from an int column value to the IDs of the rows holding it. Keys and
+ * row IDs are kept in primitive arrays with open addressing, so lookups don't
+ * box or allocate.
+ *
+ * @author karsten
+ */
+final class IntIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] keys = new int[16];
+    private int[][] rowIds = new int[16][];
+    private int[] sizes = new int[16];
+    private boolean[] used = new boolean[16];
+    private int keyCount = 0;
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+
+    void add(int key, int rowId) {
+        int slot = slot(key);
+
+        if (!used[slot]) {
+            used[slot] = true;
+            keys[slot] = key;
+            rowIds[slot] = new int[2];
+            sizes[slot] = 0;
+            keyCount++;
+        }
+
+        if (sizes[slot] == rowIds[slot].length) {
+            rowIds[slot] = Arrays.copyOf(rowIds[slot], sizes[slot] * 2);
+        }
+
+        rowIds[slot][sizes[slot]++] = rowId;
+
+        // Keep at most half the slots in use so probes stay short
+        if (keyCount * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    void remove(int key, int rowId) {
+        int slot = slot(key);
+
+        if (!used[slot]) {
+            return;
+        }
+
+        int[] ids = rowIds[slot];
+
+        for (int i = 0; i < sizes[slot]; i++) {
+            if (ids[i] == rowId) {
+                // Keep insertion order, scans rely on it
+                System.arraycopy(ids, i + 1, ids, i, sizes[slot] - i - 1);
+                sizes[slot]--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the IDs of the rows holding the key, oldest first
+     *
+     * @param key column value
+     * @return row IDs, empty if there are none
+     */
+    int[] get(int key) {
+        int slot = slot(key);
+
+        if (!used[slot] || sizes[slot] == 0) {
+            return EMPTY;
+        }
+
+        return Arrays.copyOf(rowIds[slot], sizes[slot]);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[][] oldRowIds = rowIds;
+        int[] oldSizes = sizes;
+        boolean[] oldUsed = used;
+
+        keys = new int[oldKeys.length * 2];
+        rowIds = new int[oldKeys.length * 2][];
+        sizes = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                rowIds[slot] = oldRowIds[i];
+                sizes[slot] = oldSizes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package tables.memory;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Array value of a query result, such as an ARRAY_AGG, so callers can read it
+ * with getArray as they would from PostgreSQL. Only the elements are
+ * supported, not the result set views.
+ *
+ * @author karsten
+ */
+final class MemoryArray implements Array {
+
+    private final Object[] elements;
+    private final int baseType;
+    private final String baseTypeName;
+
+    MemoryArray(Object[] elements, int baseType, String baseTypeName) {
+        this.elements = elements;
+        this.baseType = baseType;
+        this.baseTypeName = baseTypeName;
+    }
+
+    @Override
+    public String getBaseTypeName() {
+        return baseTypeName;
+    }
+
+    @Override
+    public int getBaseType() {
+        return baseType;
+    }
+
+    @Override
+    public Object getArray() {
+        return elements.clone();
+    }
+
+    @Override
+    public Object getArray(Map<String, Class<?>> map) {
+        return getArray();
+    }
+
+    @Override
+    public Object getArray(long index, int count) {
+        // SQL arrays count from 1
+        return Arrays.copyOfRange(elements, (int) index - 1, (int) index - 1 + count);
+    }
+
+    @Override
+    public Object getArray(long index, int count, Map<String, Class<?>> map) {
+        return getArray(index, count);
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("In-memory arrays have no result set");
+    }
+
+    @Override
+    public ResultSet getResultSet(Map<String, Class<?>> map) throws SQLFeatureNotSupportedException {
+        return getResultSet();
+    }
+
+    @Override
+    public ResultSet getResultSet(long index, int count) throws SQLFeatureNotSupportedException {
+        return getResultSet();
+    }
+
+    @Override
+    public ResultSet getResultSet(long index, int count, Map<String, Class<?>> map) throws SQLFeatureNotSupportedException {
+        return getResultSet();
+    }
+
+    @Override
+    public void free() {
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(elements);
+    }
+}
@@ -0,0 +1,1011 @@
+package tables.memory;
+
+import java.io.OutputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import tables.StorageEngine;
+
+/**
+ * Storage engine that keeps every table in memory, for tests, benchmarks and
+ * running the store without a database. It understands the SQL the entities
+ * use (see Sql) and starts empty.
+ * <p>
+ * Selects share a read lock and changes take a write lock, which a
+ * transaction holds until it ends, so transactions are serializable. Every
+ * change is recorded in an undo log so a failed statement or transaction can
+ * be rolled back.
+ *
+ * @author karsten
+ */
+public final class MemoryEngine implements StorageEngine {
+
+    private static final RowSetFactory ROW_SET_FACTORY;
+
+    static {
+        try {
+            ROW_SET_FACTORY = RowSetProvider.newFactory();
+        } catch (SQLException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final Map<String, MemoryTable> tables = MemorySchema.create();
+    private final Map<String, List<Sql.Statement>> statements = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Undo log of the transaction open on each thread
+    private final ThreadLocal<List<Runnable>> transaction = new ThreadLocal<>();
+
+    /**
+     * Table a query reads from, with the position of its row ID in each tuple
+     */
+    private record Source(Sql.TableRef ref, MemoryTable table) {
+
+    }
+
+    private record Ref(int source, int column) {
+
+    }
+
+    private record Filter(Ref ref, Sql.Op op, Object value, Object upper) {
+
+    }
+
+    private record JoinStep(int source, Ref outer, int column, boolean left) {
+
+    }
+
+    /**
+     * Output column, or an aggregate of one. A COUNT(*) has no ref, and an
+     * ARRAY subquery has its own sources instead.
+     */
+    private record Item(Ref ref, Sql.Aggregate aggregate, boolean distinct, String label, int sqlType, Subquery subquery) {
+
+        Item(Ref ref, Sql.Aggregate aggregate, boolean distinct, String label, int sqlType) {
+            this(ref, aggregate, distinct, label, sqlType, null);
+        }
+    }
+
+    /**
+     * Correlated ARRAY subquery on one table, with the column of the outer
+     * row each of its conditions compares with, or null for a plain value
+     */
+    private record Subquery(List<Source> sources, Ref column, List<Sql.Condition> where, List<Ref> outer) {
+
+    }
+
+    private record OrderKey(int output, Ref ref, boolean descending) {
+
+    }
+
+    private record Row(Object[] values, Object[] keys) {
+
+    }
+
+    @Override
+    public CachedRowSet select(String query, Object... arguments) {
+        Sql.Select select = single(query, Sql.Select.class);
+
+        lock.readLock().lock();
+
+        try {
+            return run(select, arguments);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public <T> Stream<T> stream(String query, int fetchSize, Function<ResultSet, T> func, Object... arguments) {
+        // Rows are already in memory, so there is nothing to fetch lazily
+        CachedRowSet rs = select(query, arguments);
+
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(rs.size(), Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                } catch (SQLException ex) {
+                    // Major error
+                    throw new RuntimeException(ex.getMessage());
+                }
+
+                action.accept(func.apply(rs));
+
+                return true;
+            }
+        };
+
+        return StreamSupport.stream(rows, false);
+    }
+
+    @Override
+    public int execute(String query, Object... arguments) {
+        List<Sql.Statement> parsed = parse(query);
+
+        return write(undo -> execute(parsed, arguments, undo));
+    }
+
+    @Override
+    public int[] executeBatch(String query, List<Object[]> rows) {
+        List<Sql.Statement> parsed = parse(query);
+
+        return write(undo -> {
+            int[] counts = new int[rows.size()];
+
+            for (int i = 0; i < rows.size(); i++) {
+                counts[i] = execute(parsed, rows.get(i), undo);
+            }
+
+            return counts;
+        });
+    }
+
+    @Override
+    public int insert(String query, Object... arguments) {
+        Sql.Insert insert = single(query, Sql.Insert.class);
+
+        Object[] row = write(undo -> insert(insert, arguments, undo));
+
+        // The generated key is the first column, like RETURN_GENERATED_KEYS
+        return ((Number) row[0]).intValue();
+    }
+
+    @Override
+    public <T> List<T> insertBatch(String query, List<Object[]> rows, Function<ResultSet, T> func) {
+        Sql.Insert insert = single(query, Sql.Insert.class);
+
+        CachedRowSet rs = write(undo -> {
+            MemoryTable table = table(insert.table());
+            List<Object[]> inserted = new ArrayList<>(rows.size());
+
+            for (Object[] arguments : rows) {
+                inserted.add(insert(insert, arguments, undo));
+            }
+
+            // Every column of every row, like the generated keys of PostgreSQL
+            List<Item> items = new ArrayList<>();
+
+            for (int i = 0; i < table.getColumns().size(); i++) {
+                Column column = table.getColumns().get(i);
+                items.add(new Item(new Ref(0, i), Sql.Aggregate.NONE, false, column.getName(), column.getType().sqlType()));
+            }
+
+            return rowSet(items, inserted);
+        });
+
+        List<T> result = new ArrayList<>(rows.size());
+
+        try {
+            while (rs.next()) {
+                result.add(func.apply(rs));
+            }
+        } catch (SQLException ex) {
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        return result;
+    }
+
+    @Override
+    public <T> T inTransaction(Callable<T> work) {
+        lock.writeLock().lock();
+
+        List<Runnable> undo = transaction.get();
+        boolean outermost = (undo == null);
+
+        if (outermost) {
+            undo = new ArrayList<>();
+            transaction.set(undo);
+        }
+
+        // A nested transaction only rolls back its own changes, like a savepoint
+        int mark = undo.size();
+
+        try {
+            return work.call();
+        } catch (RuntimeException | Error ex) {
+            rollback(undo, mark);
+            throw ex;
+        } catch (Exception ex) {
+            rollback(undo, mark);
+            throw new RuntimeException(ex);
+        } finally {
+            if (outermost) {
+                transaction.remove();
+            }
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long copyIn(String query, Reader reader) {
+        throw new UnsupportedOperationException("In-memory storage doesn't support COPY");
+    }
+
+    @Override
+    public long copyOut(String query, OutputStream out) {
+        throw new UnsupportedOperationException("In-memory storage doesn't support COPY");
+    }
+
+    /**
+     * Gets the number of rows in a table
+     *
+     * @param table table name
+     * @return number of rows
+     */
+    public int count(String table) {
+        lock.readLock().lock();
+
+        try {
+            return table(table).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Sql.Statement> parse(String query) {
+        return statements.computeIfAbsent(query, Sql::parse);
+    }
+
+    private <S extends Sql.Statement> S single(String query, Class<S> type) {
+        List<Sql.Statement> parsed = parse(query);
+
+        if (parsed.size() != 1 || !type.isInstance(parsed.get(0))) {
+            throw new UnsupportedOperationException("In-memory storage expected a single "
+                    + type.getSimpleName().toUpperCase() + " statement: " + query);
+        }
+
+        return type.cast(parsed.get(0));
+    }
+
+    /**
+     * Runs a change under the write lock. A statement either makes all of its
+     * changes or none, and outside a transaction it commits right away.
+     */
+    private <T> T write(Function<List<Runnable>, T> statement) {
+        lock.writeLock().lock();
+
+        try {
+            List<Runnable> undo = transaction.get();
+
+            if (undo == null) {
+                undo = new ArrayList<>();
+            }
+
+            int mark = undo.size();
+
+            try {
+                return statement.apply(undo);
+            } catch (RuntimeException ex) {
+                rollback(undo, mark);
+                throw ex;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void rollback(List<Runnable> undo, int mark) {
+        // Newest change first
+        for (int i = undo.size() - 1; i >= mark; i--) {
+            undo.remove(i).run();
+        }
+    }
+
+    private MemoryTable table(String name) {
+        MemoryTable table = tables.get(name.toLowerCase());
+
+        if (table == null) {
+            throw new RuntimeException("relation \"" + name + "\" does not exist");
+        }
+
+        return table;
+    }
+
+    private int execute(List<Sql.Statement> parsed, Object[] arguments, List<Runnable> undo) {
+        int rowsAffected = 0;
+
+        for (Sql.Statement statement : parsed) {
+            if (statement instanceof Sql.Insert insert) {
+                insert(insert, arguments, undo);
+                rowsAffected++;
+            } else if (statement instanceof Sql.Update update) {
+                rowsAffected += update(update, arguments, undo);
+            } else if (statement instanceof Sql.Delete delete) {
+                rowsAffected += delete(delete, arguments, undo);
+            } else {
+                throw new RuntimeException("A result was returned when none was expected.");
+            }
+        }
+
+        return rowsAffected;
+    }
+
+    private Object[] insert(Sql.Insert insert, Object[] arguments, List<Runnable> undo) {
+        MemoryTable table = table(insert.table());
+        Object[] values = new Object[table.getColumns().size()];
+        boolean[] assigned = new boolean[values.length];
+
+        for (int i = 0; i < insert.columns().size(); i++) {
+            int column = table.column(insert.columns().get(i));
+
+            values[column] = convert(table.getColumns().get(column), value(insert.values().get(i), arguments));
+            assigned[column] = true;
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (!assigned[i]) {
+                values[i] = table.getColumns().get(i).getDefault();
+            }
+        }
+
+        int rowId = table.insert(values);
+        undo.add(() -> table.delete(rowId));
+
+        return values;
+    }
+
+    private int update(Sql.Update update, Object[] arguments, List<Runnable> undo) {
+        MemoryTable table = table(update.table());
+        List<Source> sources = List.of(new Source(new Sql.TableRef(update.table(), null), table));
+        int[] columns = new int[update.assignments().size()];
+        Object[] values = new Object[columns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            Sql.Assignment assignment = update.assignments().get(i);
+
+            columns[i] = table.column(assignment.column());
+            values[i] = convert(table.getColumns().get(columns[i]), value(assignment.value(), arguments));
+        }
+
+        int rowsAffected = 0;
+
+        for (int rowId : matching(sources, filters(sources, update.where(), arguments))) {
+            Object[] old = table.row(rowId);
+            Object[] changed = old.clone();
+
+            for (int i = 0; i < columns.length; i++) {
+                changed[columns[i]] = values[i];
+            }
+
+            table.update(rowId, changed);
+            undo.add(() -> table.update(rowId, old));
+            rowsAffected++;
+        }
+
+        return rowsAffected;
+    }
+
+    private int delete(Sql.Delete delete, Object[] arguments, List<Runnable> undo) {
+        MemoryTable table = table(delete.table());
+        List<Source> sources = List.of(new Source(new Sql.TableRef(delete.table(), null), table));
+        int rowsAffected = 0;
+
+        for (int rowId : matching(sources, filters(sources, delete.where(), arguments))) {
+            Object[] old = table.row(rowId);
+
+            table.delete(rowId);
+            undo.add(() -> table.restore(rowId, old));
+            rowsAffected++;
+        }
+
+        return rowsAffected;
+    }
+
+    private CachedRowSet run(Sql.Select select, Object[] arguments) {
+        List<Source> sources = new ArrayList<>();
+        sources.add(new Source(select.from(), table(select.from().table())));
+
+        for (Sql.Join join : select.joins()) {
+            sources.add(new Source(join.table(), table(join.table().table())));
+        }
+
+        List<Filter> filters = filters(sources, select.where(), arguments);
+
+        // Rows of the first table, each a tuple of row IDs that the joins fill in
+        List<int[]> tuples = new ArrayList<>();
+
+        for (int rowId : matching(sources, filters)) {
+            int[] tuple = new int[sources.size()];
+            tuple[0] = rowId;
+            tuples.add(tuple);
+        }
+
+        for (int i = 0; i < select.joins().size(); i++) {
+            tuples = join(sources, joinStep(sources, i + 1, select.joins().get(i)), tuples);
+        }
+
+        // Conditions on joined tables apply once every join is done
+        List<int[]> filtered = new ArrayList<>(tuples.size());
+
+        for (int[] tuple : tuples) {
+            if (test(sources, filters, tuple, false)) {
+                filtered.add(tuple);
+            }
+        }
+
+        List<Item> items = items(sources, select.items());
+        List<OrderKey> keys = orderKeys(sources, select.orderBy(), items);
+        List<Row> rows = project(sources, select, items, keys, filtered, arguments);
+
+        if (select.distinct()) {
+            Set<List<Object>> seen = new LinkedHashSet<>();
+            rows.removeIf(row -> !seen.add(Arrays.asList(row.values())));
+        }
+
+        if (!keys.isEmpty()) {
+            rows.sort((a, b) -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    int c = compareNullsLast(a.keys()[i], b.keys()[i]);
+
+                    if (c != 0) {
+                        return keys.get(i).descending() ? -c : c;
+                    }
+                }
+
+                return 0;
+            });
+        }
+
+        if (select.limit() >= 0 && rows.size() > select.limit()) {
+            rows = rows.subList(0, select.limit());
+        }
+
+        List<Object[]> values = new ArrayList<>(rows.size());
+
+        for (Row row : rows) {
+            values.add(row.values());
+        }
+
+        return rowSet(items, values);
+    }
+
+    private static Ref resolve(List<Source> sources, Sql.ColumnRef column) {
+        Ref found = null;
+
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+
+            if (column.qualifier() != null && !source.ref().matches(column.qualifier())) {
+                continue;
+            }
+
+            if (!source.table().hasColumn(column.column())) {
+                continue;
+            }
+
+            if (found != null) {
+                throw new RuntimeException("column reference \"" + column + "\" is ambiguous");
+            }
+
+            found = new Ref(i, source.table().column(column.column()));
+        }
+
+        if (found == null) {
+            throw new RuntimeException("column \"" + column + "\" does not exist");
+        }
+
+        return found;
+    }
+
+    private static Column column(List<Source> sources, Ref ref) {
+        return sources.get(ref.source()).table().getColumns().get(ref.column());
+    }
+
+    private static Object get(List<Source> sources, int[] tuple, Ref ref) {
+        int rowId = tuple[ref.source()];
+
+        // Row ID 0 is the missing side of a LEFT JOIN
+        return (rowId == 0) ? null : sources.get(ref.source()).table().row(rowId)[ref.column()];
+    }
+
+    private static List<Filter> filters(List<Source> sources, List<Sql.Condition> where, Object[] arguments) {
+        List<Filter> filters = new ArrayList<>(where.size());
+
+        for (Sql.Condition condition : where) {
+            Ref ref = resolve(sources, condition.column());
+            Column column = column(sources, ref);
+            Object upper = (condition.upper() == null) ? null : convert(column, value(condition.upper(), arguments));
+
+            if (condition.op() == Sql.Op.ANY) {
+                // Converted to the column type, so the set finds them by equals
+                Set<Object> values = new HashSet<>();
+
+                for (Object element : elements(value(condition.value(), arguments))) {
+                    if (element != null) {
+                        values.add(convert(column, element));
+                    }
+                }
+
+                filters.add(new Filter(ref, condition.op(), values, null));
+                continue;
+            }
+
+            filters.add(new Filter(ref, condition.op(), convert(column, value(condition.value(), arguments)), upper));
+        }
+
+        return filters;
+    }
+
+    /**
+     * Finds the rows of the first table that pass its conditions, using an
+     * index for an equality condition when there is one
+     */
+    private static int[] matching(List<Source> sources, List<Filter> filters) {
+        MemoryTable table = sources.get(0).table();
+        int[] candidates = null;
+
+        for (Filter filter : filters) {
+            if (filter.ref().source() == 0 && filter.op() == Sql.Op.EQ) {
+                candidates = table.lookup(filter.ref().column(), filter.value());
+            } else if (filter.ref().source() == 0 && filter.op() == Sql.Op.ANY) {
+                candidates = lookupAny(table, filter.ref().column(), (Set<?>) filter.value());
+            }
+
+            if (candidates != null) {
+                break;
+            }
+        }
+
+        if (candidates == null) {
+            candidates = table.scan();
+        }
+
+        int[] tuple = new int[sources.size()];
+        int count = 0;
+
+        for (int rowId : candidates) {
+            tuple[0] = rowId;
+
+            if (test(sources, filters, tuple, true)) {
+                candidates[count++] = rowId;
+            }
+        }
+
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Finds rows by any of several column values, in row order like a scan
+     *
+     * @return row IDs, or null if the column has no index
+     */
+    private static int[] lookupAny(MemoryTable table, int column, Set<?> values) {
+        IntStream rowIds = IntStream.empty();
+
+        for (Object value : values) {
+            int[] found = table.lookup(column, value);
+
+            if (found == null) {
+                return null;
+            }
+
+            rowIds = IntStream.concat(rowIds, IntStream.of(found));
+        }
+
+        return rowIds.sorted().distinct().toArray();
+    }
+
+    private static boolean test(List<Source> sources, List<Filter> filters, int[] tuple, boolean firstOnly) {
+        for (Filter filter : filters) {
+            if (firstOnly != (filter.ref().source() == 0)) {
+                continue;
+            }
+
+            Object value = get(sources, tuple, filter.ref());
+
+            // NULL matches nothing
+            if (value == null || filter.value() == null) {
+                return false;
+            }
+
+            if (filter.op() == Sql.Op.EQ) {
+                if (compare(value, filter.value()) != 0) {
+                    return false;
+                }
+            } else if (filter.op() == Sql.Op.ANY) {
+                if (!((Set<?>) filter.value()).contains(value)) {
+                    return false;
+                }
+            } else if (filter.upper() == null || compare(value, filter.value()) < 0 || compare(value, filter.upper()) > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static JoinStep joinStep(List<Source> sources, int source, Sql.Join join) {
+        // Only the tables before this one can be referenced
+        List<Source> visible = sources.subList(0, source + 1);
+        Ref first = resolve(visible, join.first());
+        Ref second = resolve(visible, join.second());
+
+        if (first.source() == source && second.source() < source) {
+            return new JoinStep(source, second, first.column(), join.left());
+        }
+
+        if (second.source() == source && first.source() < source) {
+            return new JoinStep(source, first, second.column(), join.left());
+        }
+
+        throw new UnsupportedOperationException("In-memory storage can only join on a column of the joined table: "
+                + join.first() + " = " + join.second());
+    }
+
+    private static List<int[]> join(List<Source> sources, JoinStep step, List<int[]> tuples) {
+        MemoryTable table = sources.get(step.source()).table();
+        List<int[]> joined = new ArrayList<>(tuples.size());
+        int[] all = null;
+
+        for (int[] tuple : tuples) {
+            Object key = get(sources, tuple, step.outer());
+            boolean matched = false;
+
+            if (key != null) {
+                int[] candidates = table.lookup(step.column(), key);
+
+                if (candidates == null) {
+                    if (all == null) {
+                        all = table.scan();
+                    }
+
+                    candidates = all;
+                }
+
+                for (int rowId : candidates) {
+                    Object value = table.row(rowId)[step.column()];
+
+                    if (value != null && compare(value, key) == 0) {
+                        int[] next = tuple.clone();
+                        next[step.source()] = rowId;
+                        joined.add(next);
+                        matched = true;
+                    }
+                }
+            }
+
+            if (!matched && step.left()) {
+                joined.add(tuple.clone());
+            }
+        }
+
+        return joined;
+    }
+
+    private List<Item> items(List<Source> sources, List<Sql.SelectItem> selected) {
+        List<Item> items = new ArrayList<>();
+
+        for (Sql.SelectItem item : selected) {
+            if (item.aggregate() == Sql.Aggregate.COUNT) {
+                Ref ref = (item.column() == null) ? null : resolve(sources, item.column());
+                items.add(new Item(ref, item.aggregate(), false, item.label(), Types.BIGINT));
+            } else if (item.aggregate() == Sql.Aggregate.ARRAY_AGG) {
+                items.add(new Item(resolve(sources, item.column()), item.aggregate(), item.distinct(), item.label(), Types.ARRAY));
+            } else if (item.aggregate() == Sql.Aggregate.ARRAY) {
+                items.add(new Item(null, item.aggregate(), false, item.label(), Types.ARRAY, subquery(sources, item.subquery())));
+            } else if (item.column() == null) {
+                // * is every column of every table
+                for (int i = 0; i < sources.size(); i++) {
+                    List<Column> columns = sources.get(i).table().getColumns();
+
+                    for (int j = 0; j < columns.size(); j++) {
+                        items.add(new Item(new Ref(i, j), Sql.Aggregate.NONE, false, columns.get(j).getName(),
+                                columns.get(j).getType().sqlType()));
+                    }
+                }
+            } else {
+                Ref ref = resolve(sources, item.column());
+                items.add(new Item(ref, Sql.Aggregate.NONE, false, item.label(), column(sources, ref).getType().sqlType()));
+            }
+        }
+
+        return items;
+    }
+
+    private Subquery subquery(List<Source> outer, Sql.Select select) {
+        if (select.distinct() || !select.joins().isEmpty() || !select.groupBy().isEmpty() || !select.orderBy().isEmpty()
+                || select.limit() >= 0 || select.items().size() != 1 || select.items().get(0).column() == null
+                || select.items().get(0).aggregate() != Sql.Aggregate.NONE) {
+            throw new UnsupportedOperationException("In-memory storage can only run an ARRAY subquery of one column "
+                    + "of one table with conditions");
+        }
+
+        List<Source> sources = List.of(new Source(select.from(), table(select.from().table())));
+        List<Ref> outerRefs = new ArrayList<>(select.where().size());
+
+        for (Sql.Condition condition : select.where()) {
+            outerRefs.add((condition.value() instanceof Sql.Outer column) ? resolve(outer, column.column()) : null);
+        }
+
+        return new Subquery(sources, resolve(sources, select.items().get(0).column()), select.where(), outerRefs);
+    }
+
+    private static List<OrderKey> orderKeys(List<Source> sources, List<Sql.OrderItem> orderBy, List<Item> items) {
+        List<OrderKey> keys = new ArrayList<>(orderBy.size());
+
+        for (Sql.OrderItem order : orderBy) {
+            int output = -1;
+
+            // An output label wins over a column of the same name, as in PostgreSQL
+            if (order.column().qualifier() == null) {
+                for (int i = 0; i < items.size(); i++) {
+                    if (items.get(i).label().equalsIgnoreCase(order.column().column())) {
+                        output = i;
+                        break;
+                    }
+                }
+            }
+
+            Ref ref = (output >= 0) ? null : resolve(sources, order.column());
+            keys.add(new OrderKey(output, ref, order.descending()));
+        }
+
+        return keys;
+    }
+
+    private static List<Row> project(List<Source> sources, Sql.Select select, List<Item> items, List<OrderKey> keys,
+            List<int[]> tuples, Object[] arguments) {
+        boolean grouped = !select.groupBy().isEmpty() || items.stream().anyMatch(item -> item.aggregate() == Sql.Aggregate.COUNT
+                || item.aggregate() == Sql.Aggregate.ARRAY_AGG);
+        List<List<int[]>> groups = new ArrayList<>();
+
+        if (!grouped) {
+            for (int[] tuple : tuples) {
+                groups.add(List.of(tuple));
+            }
+        } else if (select.groupBy().isEmpty()) {
+            // A COUNT without GROUP BY is one row, even over no rows
+            groups.add(tuples);
+        } else {
+            List<Ref> groupBy = new ArrayList<>();
+
+            for (Sql.ColumnRef column : select.groupBy()) {
+                groupBy.add(resolve(sources, column));
+            }
+
+            Map<List<Object>, List<int[]>> byKey = new LinkedHashMap<>();
+
+            for (int[] tuple : tuples) {
+                Object[] key = new Object[groupBy.size()];
+
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = get(sources, tuple, groupBy.get(i));
+                }
+
+                byKey.computeIfAbsent(Arrays.asList(key), k -> new ArrayList<>()).add(tuple);
+            }
+
+            groups.addAll(byKey.values());
+        }
+
+        List<Row> rows = new ArrayList<>(groups.size());
+
+        for (List<int[]> group : groups) {
+            int[] first = group.isEmpty() ? null : group.get(0);
+            Object[] values = new Object[items.size()];
+
+            for (int i = 0; i < values.length; i++) {
+                Item item = items.get(i);
+
+                if (item.aggregate() == Sql.Aggregate.COUNT) {
+                    long count = 0;
+
+                    for (int[] tuple : group) {
+                        if (item.ref() == null || get(sources, tuple, item.ref()) != null) {
+                            count++;
+                        }
+                    }
+
+                    values[i] = count;
+                } else if (item.aggregate() == Sql.Aggregate.ARRAY_AGG) {
+                    values[i] = arrayAgg(sources, item, group);
+                } else if (item.aggregate() == Sql.Aggregate.ARRAY) {
+                    values[i] = (first == null) ? null : array(sources, first, item.subquery(), arguments);
+                } else {
+                    values[i] = (first == null) ? null : get(sources, first, item.ref());
+                }
+            }
+
+            Object[] sortKeys = new Object[keys.size()];
+
+            for (int i = 0; i < sortKeys.length; i++) {
+                OrderKey key = keys.get(i);
+
+                sortKeys[i] = (key.output() >= 0) ? values[key.output()]
+                        : (first == null) ? null : get(sources, first, key.ref());
+            }
+
+            rows.add(new Row(values, sortKeys));
+        }
+
+        return rows;
+    }
+
+    /**
+     * Collects a column over a group, NULLs included as in PostgreSQL. Distinct
+     * values come out sorted, NULL last.
+     *
+     * @return array, or null for an empty group
+     */
+    private static MemoryArray arrayAgg(List<Source> sources, Item item, List<int[]> group) {
+        if (group.isEmpty()) {
+            return null;
+        }
+
+        List<Object> values = new ArrayList<>(group.size());
+
+        for (int[] tuple : group) {
+            values.add(get(sources, tuple, item.ref()));
+        }
+
+        if (item.distinct()) {
+            values = new ArrayList<>(new LinkedHashSet<>(values));
+            values.sort(MemoryEngine::compareNullsLast);
+        }
+
+        Column column = column(sources, item.ref());
+
+        return new MemoryArray(values.toArray(), column.getType().sqlType(), column.getType().name().toLowerCase());
+    }
+
+    /**
+     * Runs a correlated subquery for one row of the outer query. Unlike
+     * ARRAY_AGG, no matching rows make an empty array rather than NULL.
+     */
+    private static MemoryArray array(List<Source> outer, int[] tuple, Subquery subquery, Object[] arguments) {
+        List<Sql.Condition> where = new ArrayList<>(subquery.where().size());
+
+        for (int i = 0; i < subquery.where().size(); i++) {
+            Sql.Condition condition = subquery.where().get(i);
+            Ref ref = subquery.outer().get(i);
+
+            where.add((ref == null) ? condition
+                    : new Sql.Condition(condition.column(), condition.op(), new Sql.Literal(get(outer, tuple, ref)), condition.upper()));
+        }
+
+        List<Source> sources = subquery.sources();
+        MemoryTable table = sources.get(0).table();
+        int[] rowIds = matching(sources, filters(sources, where, arguments));
+        Object[] values = new Object[rowIds.length];
+
+        for (int i = 0; i < rowIds.length; i++) {
+            values[i] = table.row(rowIds[i])[subquery.column().column()];
+        }
+
+        Column column = column(sources, subquery.column());
+
+        return new MemoryArray(values, column.getType().sqlType(), column.getType().name().toLowerCase());
+    }
+
+    private static CachedRowSet rowSet(List<Item> items, List<Object[]> rows) {
+        try {
+            RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+            meta.setColumnCount(items.size());
+
+            for (int i = 0; i < items.size(); i++) {
+                meta.setColumnName(i + 1, items.get(i).label());
+                meta.setColumnLabel(i + 1, items.get(i).label());
+                meta.setColumnType(i + 1, items.get(i).sqlType());
+            }
+
+            CachedRowSet rs = ROW_SET_FACTORY.createCachedRowSet();
+            rs.setMetaData(meta);
+
+            for (Object[] row : rows) {
+                // Inserted rows go before the cursor, so keep it at the end
+                rs.afterLast();
+                rs.moveToInsertRow();
+
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] == null) {
+                        rs.updateNull(i + 1);
+                    } else {
+                        rs.updateObject(i + 1, row[i]);
+                    }
+                }
+
+                rs.insertRow();
+                rs.moveToCurrentRow();
+            }
+
+            rs.beforeFirst();
+
+            return rs;
+        } catch (SQLException ex) {
+            // Major error
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    private static Object value(Sql.Expr expr, Object[] arguments) {
+        if (expr instanceof Sql.Param param) {
+            if (param.index() >= arguments.length) {
+                throw new RuntimeException("No value specified for parameter " + (param.index() + 1) + ".");
+            }
+
+            return arguments[param.index()];
+        }
+
+        if (expr instanceof Sql.Outer outer) {
+            throw new UnsupportedOperationException("In-memory storage can only compare with column " + outer.column()
+                    + " in an ARRAY subquery");
+        }
+
+        return ((Sql.Literal) expr).value();
+    }
+
+    private static Object[] elements(Object value) {
+        if (value instanceof int[] ints) {
+            return IntStream.of(ints).boxed().toArray();
+        }
+
+        if (value instanceof Object[] array) {
+            return array;
+        }
+
+        throw new RuntimeException("op ANY/ALL (array) requires array on right side");
+    }
+
+    private static Object convert(Column column, Object value) {
+        try {
+            return column.convert(value);
+        } catch (IllegalArgumentException ex) {
+            // Number and date parsing throw IllegalArgumentException, which
+            // Table uses for empty results
+            throw new RuntimeException("invalid input syntax for type " + column.getType().name().toLowerCase()
+                    + ": \"" + value + "\"");
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y && a.getClass() != b.getClass()) {
+            return new BigDecimal(x.toString()).compareTo(new BigDecimal(y.toString()));
+        }
+
+        if (a.getClass() != b.getClass() && !(a instanceof java.util.Date && b instanceof java.util.Date)) {
+            return Objects.toString(a).compareTo(Objects.toString(b));
+        }
+
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static int compareNullsLast(Object a, Object b) {
+        if (a == null) {
+            return (b == null) ? 0 : 1;
+        }
+
+        return (b == null) ? -1 : compare(a, b);
+    }
+}
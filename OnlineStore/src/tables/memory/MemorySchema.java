@@ -0,0 +1,129 @@
+package tables.memory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The store's tables as defined in DBSchema/database.sql. Foreign keys are
+ * not enforced, but every unique constraint is.
+ *
+ * @author karsten
+ */
+final class MemorySchema {
+
+    private MemorySchema() {
+    }
+
+    static Map<String, MemoryTable> create() {
+        Map<String, MemoryTable> tables = new HashMap<>();
+
+        add(tables, new MemoryTable("address", "address_id", List.of(
+                Column.integer("address_id", true),
+                Column.text("street", 100, true),
+                Column.text("city", 50, true),
+                Column.text("state", 50, true),
+                Column.text("country", 50, true).withDefault(() -> "USA"),
+                Column.text("zip_code", 10, true),
+                Column.text("apt_number", 20, false))));
+
+        add(tables, new MemoryTable("address_relation", "id", List.of(
+                Column.integer("id", true),
+                Column.integer("address_id", false),
+                Column.enumeration("type", false, "billing", "shipping", "distributor")))
+                .index("address_id")
+                .unique("address_id", "type"));
+
+        add(tables, new MemoryTable("distributor", "distributor_id", List.of(
+                Column.integer("distributor_id", true),
+                Column.text("distributor_phone", 20, true),
+                Column.integer("address_id", false)))
+                .unique("distributor_phone"));
+
+        add(tables, new MemoryTable("product", "product_id", List.of(
+                Column.integer("product_id", true),
+                Column.text("product_name", 50, true),
+                Column.text("product_description", 255, true),
+                Column.integer("product_quantity", true),
+                Column.numeric("current_unit_price", 2),
+                Column.integer("distributor_id", false)))
+                .index("distributor_id")
+                .unique("product_name"));
+
+        add(tables, new MemoryTable("product_type", "category_id", List.of(
+                Column.integer("category_id", true),
+                Column.text("category_name", 50, true)))
+                .unique("category_name"));
+
+        add(tables, new MemoryTable("product_category", null, List.of(
+                Column.integer("category_id", true),
+                Column.integer("product_id", true)))
+                .index("category_id")
+                .index("product_id")
+                .unique("category_id", "product_id"));
+
+        add(tables, new MemoryTable("product_price_change", "price_change_id", List.of(
+                Column.integer("price_change_id", true),
+                Column.integer("product_id", false),
+                Column.numeric("new_product_price", 2),
+                Column.numeric("old_product_price", 2),
+                Column.timestamp("price_change_date").withDefault(Column.now())))
+                .index("product_id"));
+
+        add(tables, new MemoryTable("customer", "customer_id", List.of(
+                Column.integer("customer_id", true),
+                Column.text("firstname", 50, true),
+                Column.text("lastname", 50, true),
+                Column.text("email_address", 100, true),
+                Column.text("phone_number", 15, false)))
+                .unique("email_address"));
+
+        add(tables, new MemoryTable("payment_info", "payment_id", List.of(
+                Column.integer("payment_id", true),
+                Column.integer("billing_address_id", false),
+                Column.text("firstname", 50, true),
+                Column.text("lastname", 50, true),
+                Column.integer("card_number", true),
+                Column.date("exp_date"),
+                Column.integer("cvv", true))));
+
+        add(tables, new MemoryTable("customer_order", "order_id", List.of(
+                Column.integer("order_id", true),
+                Column.integer("customer_id", true),
+                Column.integer("payment_id", true),
+                Column.integer("shipping_id", true),
+                Column.enumeration("order_status", true, "pending", "shipped", "delivered").withDefault(() -> "pending"),
+                Column.date("order_date").withDefault(Column.today())))
+                .index("customer_id"));
+
+        add(tables, new MemoryTable("order_item", "order_item_id", List.of(
+                Column.integer("order_item_id", true),
+                Column.integer("product_id", true),
+                Column.integer("order_id", true),
+                Column.numeric("unit_price", 2),
+                Column.integer("quantity", true)))
+                .index("product_id")
+                .index("order_id")
+                .unique("order_id", "product_id"));
+
+        add(tables, new MemoryTable("wishlist", "wishlist_id", List.of(
+                Column.integer("wishlist_id", true),
+                Column.integer("customer_id", false),
+                Column.text("wishlist_name", 50, false)))
+                .index("customer_id"));
+
+        add(tables, new MemoryTable("wishlist_items", "wishlist_item_id", List.of(
+                Column.integer("wishlist_item_id", true),
+                Column.integer("wishlist_id", false),
+                Column.integer("product_id", false),
+                Column.integer("quantity", true)))
+                .index("wishlist_id")
+                .index("product_id"));
+
+        return tables;
+    }
+
+    private static void add(Map<String, MemoryTable> tables, MemoryTable table) {
+        tables.put(table.getName(), table);
+    }
+}
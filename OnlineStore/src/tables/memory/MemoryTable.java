@@ -0,0 +1,259 @@
+package tables.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows of one in-memory table. Rows are stored in an array indexed by row ID,
+ * which for tables with a serial primary key is the key itself, so finding a
+ * row by its ID is an array access. Int columns that are looked up often get
+ * an IntIndex, and unique constraints are checked with hash maps.
+ *
+ * @author karsten
+ */
+final class MemoryTable {
+
+    private final String name;
+    private final List<Column> columns;
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    // Index of the serial primary key column, or -1
+    private final int serial;
+    private final IntIndex[] indexes;
+    private final List<int[]> uniques = new ArrayList<>();
+    private final List<Map<List<Object>, Integer>> uniqueValues = new ArrayList<>();
+
+    private Object[][] rows = new Object[64][];
+    private int nextRowId = 1;
+    private int rowCount = 0;
+
+    MemoryTable(String name, String serial, List<Column> columns) {
+        this.name = name;
+        this.columns = columns;
+
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndexes.put(columns.get(i).getName(), i);
+        }
+
+        this.serial = (serial == null) ? -1 : column(serial);
+        this.indexes = new IntIndex[columns.size()];
+    }
+
+    /**
+     * Indexes an int column so rows can be found by its value without a scan
+     */
+    MemoryTable index(String column) {
+        indexes[column(column)] = new IntIndex();
+
+        return this;
+    }
+
+    MemoryTable unique(String... columnNames) {
+        int[] positions = new int[columnNames.length];
+
+        for (int i = 0; i < columnNames.length; i++) {
+            positions[i] = column(columnNames[i]);
+        }
+
+        uniques.add(positions);
+        uniqueValues.add(new HashMap<>());
+
+        return this;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets a column's position
+     *
+     * @param column column name
+     * @return position
+     * @throws RuntimeException the column does not exist
+     */
+    int column(String column) {
+        Integer index = columnIndexes.get(column.toLowerCase());
+
+        if (index == null) {
+            throw new RuntimeException("column \"" + column + "\" of relation \"" + name + "\" does not exist");
+        }
+
+        return index;
+    }
+
+    boolean hasColumn(String column) {
+        return columnIndexes.containsKey(column.toLowerCase());
+    }
+
+    int size() {
+        return rowCount;
+    }
+
+    Object[] row(int rowId) {
+        return (rowId > 0 && rowId < rows.length) ? rows[rowId] : null;
+    }
+
+    /**
+     * Gets the IDs of every row, oldest first
+     */
+    int[] scan() {
+        int[] ids = new int[rowCount];
+        int count = 0;
+
+        for (int rowId = 1; rowId < nextRowId && count < rowCount; rowId++) {
+            if (rows[rowId] != null) {
+                ids[count++] = rowId;
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Finds rows by a column value without scanning
+     *
+     * @param column column position
+     * @param value value converted to the column's type
+     * @return row IDs, or null if the column has no index
+     */
+    int[] lookup(int column, Object value) {
+        if (column != serial && indexes[column] == null) {
+            return null;
+        }
+
+        if (!(value instanceof Integer key)) {
+            return new int[0];
+        }
+
+        if (column == serial) {
+            return (row(key) == null) ? new int[0] : new int[]{key};
+        }
+
+        return indexes[column].get(key);
+    }
+
+    /**
+     * Inserts a row, giving it the next serial key if it has none
+     *
+     * @param values converted values in column order
+     * @return row ID
+     */
+    int insert(Object[] values) {
+        int rowId;
+
+        if (serial >= 0) {
+            if (values[serial] == null) {
+                values[serial] = nextRowId;
+            }
+
+            rowId = (Integer) values[serial];
+
+            if (row(rowId) != null) {
+                throw new RuntimeException("duplicate key value violates unique constraint \"" + name + "_pkey\"");
+            }
+        } else {
+            rowId = nextRowId;
+        }
+
+        checkNotNull(values);
+        checkUnique(values, 0);
+
+        put(rowId, values);
+        nextRowId = Math.max(nextRowId, rowId + 1);
+
+        return rowId;
+    }
+
+    /**
+     * Puts a deleted row back with its old ID, used to undo a delete
+     */
+    void restore(int rowId, Object[] values) {
+        put(rowId, values);
+    }
+
+    void update(int rowId, Object[] values) {
+        Object[] old = rows[rowId];
+
+        checkNotNull(values);
+        checkUnique(values, rowId);
+
+        remove(rowId, old);
+        put(rowId, values);
+    }
+
+    void delete(int rowId) {
+        remove(rowId, rows[rowId]);
+    }
+
+    private void put(int rowId, Object[] values) {
+        if (rowId >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, rowId + 1));
+        }
+
+        rows[rowId] = values;
+        rowCount++;
+
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] != null && values[i] != null) {
+                indexes[i].add((Integer) values[i], rowId);
+            }
+        }
+
+        for (int i = 0; i < uniques.size(); i++) {
+            uniqueValues.get(i).put(key(uniques.get(i), values), rowId);
+        }
+    }
+
+    private void remove(int rowId, Object[] values) {
+        rows[rowId] = null;
+        rowCount--;
+
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] != null && values[i] != null) {
+                indexes[i].remove((Integer) values[i], rowId);
+            }
+        }
+
+        for (int i = 0; i < uniques.size(); i++) {
+            uniqueValues.get(i).remove(key(uniques.get(i), values), rowId);
+        }
+    }
+
+    private void checkNotNull(Object[] values) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (values[i] == null && columns.get(i).isNotNull()) {
+                throw new RuntimeException("null value in column \"" + columns.get(i).getName()
+                        + "\" of relation \"" + name + "\" violates not-null constraint");
+            }
+        }
+    }
+
+    private void checkUnique(Object[] values, int rowId) {
+        for (int i = 0; i < uniques.size(); i++) {
+            List<Object> key = key(uniques.get(i), values);
+            Integer existing = uniqueValues.get(i).get(key);
+
+            // Null never conflicts
+            if (existing != null && existing != rowId && !key.contains(null)) {
+                throw new RuntimeException("duplicate key value violates unique constraint on " + name);
+            }
+        }
+    }
+
+    private static List<Object> key(int[] positions, Object[] values) {
+        Object[] key = new Object[positions.length];
+
+        for (int i = 0; i < positions.length; i++) {
+            key[i] = values[positions[i]];
+        }
+
+        return Arrays.asList(key);
+    }
+}
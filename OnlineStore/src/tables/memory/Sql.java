@@ -0,0 +1,535 @@
+package tables.memory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parser for the SQL the entities use: single table inserts, updates and
+ * deletes, and selects with equi-joins, equality, = ANY(array) and BETWEEN
+ * filters, DISTINCT, COUNT and ARRAY_AGG with GROUP BY, ORDER BY and LIMIT,
+ * and ARRAY(SELECT ...) columns of a subquery on one table whose conditions
+ * may compare with the outer row. Casts are accepted and left to the column
+ * types. Anything else is rejected with UnsupportedOperationException.
+ *
+ * @author karsten
+ */
+final class Sql {
+
+    interface Statement {
+
+    }
+
+    record ColumnRef(String qualifier, String column) {
+
+        @Override
+        public String toString() {
+            return (qualifier == null) ? column : qualifier + "." + column;
+        }
+    }
+
+    interface Expr {
+
+    }
+
+    /**
+     * Bound parameter, numbered from 0 across every statement in the query
+     */
+    record Param(int index) implements Expr {
+
+    }
+
+    record Literal(Object value) implements Expr {
+
+    }
+
+    /**
+     * Column of the outer query's row, compared with in a correlated subquery
+     */
+    record Outer(ColumnRef column) implements Expr {
+
+    }
+
+    enum Op {
+        EQ,
+        ANY,
+        BETWEEN
+    }
+
+    record Condition(ColumnRef column, Op op, Expr value, Expr upper) {
+
+    }
+
+    record TableRef(String table, String alias) {
+
+        boolean matches(String qualifier) {
+            return qualifier.equals(alias) || qualifier.equals(table);
+        }
+    }
+
+    record Join(boolean left, TableRef table, ColumnRef first, ColumnRef second) {
+
+    }
+
+    enum Aggregate {
+        NONE,
+        COUNT,
+        ARRAY_AGG,
+        ARRAY
+    }
+
+    /**
+     * Output column: a column, COUNT of a column or of every row when column
+     * is null, ARRAY_AGG of a column, of its distinct values when distinct is
+     * set, ARRAY of the single column a subquery selects for each row, or
+     * every column (*) when column is null and there is no aggregate
+     */
+    record SelectItem(ColumnRef column, Aggregate aggregate, boolean distinct, String label, Select subquery) {
+
+    }
+
+    record OrderItem(ColumnRef column, boolean descending) {
+
+    }
+
+    record Select(boolean distinct, List<SelectItem> items, TableRef from, List<Join> joins, List<Condition> where,
+            List<ColumnRef> groupBy, List<OrderItem> orderBy, int limit) implements Statement {
+
+    }
+
+    record Insert(String table, List<String> columns, List<Expr> values) implements Statement {
+
+    }
+
+    record Assignment(String column, Expr value) {
+
+    }
+
+    record Update(String table, List<Assignment> assignments, List<Condition> where) implements Statement {
+
+    }
+
+    record Delete(String table, List<Condition> where) implements Statement {
+
+    }
+
+    private enum Kind {
+        WORD,
+        NUMBER,
+        STRING,
+        SYMBOL,
+        END
+    }
+
+    private record Token(Kind kind, String text) {
+
+    }
+
+    private final String sql;
+    private final List<Token> tokens = new ArrayList<>();
+    private int position = 0;
+    private int parameters = 0;
+
+    private Sql(String sql) {
+        this.sql = sql;
+        tokenize();
+    }
+
+    /**
+     * Parses every statement in the query
+     *
+     * @param sql query, statements separated by ;
+     * @return parsed statements
+     * @throws UnsupportedOperationException the query uses SQL this parser
+     * doesn't know
+     */
+    static List<Statement> parse(String sql) {
+        Sql parser = new Sql(sql);
+        List<Statement> statements = new ArrayList<>();
+
+        while (!parser.at(Kind.END)) {
+            if (parser.accept(";")) {
+                continue;
+            }
+
+            statements.add(parser.statement());
+
+            if (!parser.at(Kind.END)) {
+                parser.expect(";");
+            }
+        }
+
+        return statements;
+    }
+
+    private void tokenize() {
+        int i = 0;
+
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+
+                while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+                    i++;
+                }
+
+                tokens.add(new Token(Kind.WORD, sql.substring(start, i).toLowerCase(Locale.ROOT)));
+            } else if (Character.isDigit(c)) {
+                int start = i;
+
+                while (i < sql.length() && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+
+                tokens.add(new Token(Kind.NUMBER, sql.substring(start, i)));
+            } else if (c == '\'') {
+                StringBuilder text = new StringBuilder();
+                i++;
+
+                while (true) {
+                    if (i >= sql.length()) {
+                        throw unsupported("unterminated string");
+                    }
+
+                    if (sql.charAt(i) == '\'') {
+                        // '' is an escaped quote
+                        if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                            text.append('\'');
+                            i += 2;
+                            continue;
+                        }
+
+                        i++;
+                        break;
+                    }
+
+                    text.append(sql.charAt(i++));
+                }
+
+                tokens.add(new Token(Kind.STRING, text.toString()));
+            } else if ("?,().;=*".indexOf(c) >= 0) {
+                tokens.add(new Token(Kind.SYMBOL, String.valueOf(c)));
+                i++;
+            } else {
+                throw unsupported("unexpected '" + c + "'");
+            }
+        }
+
+        tokens.add(new Token(Kind.END, ""));
+    }
+
+    private UnsupportedOperationException unsupported(String reason) {
+        return new UnsupportedOperationException("In-memory storage can't run this SQL (" + reason + "): " + sql);
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private boolean at(Kind kind) {
+        return peek().kind() == kind;
+    }
+
+    private boolean at(String text) {
+        Token token = peek();
+
+        return (token.kind() == Kind.WORD || token.kind() == Kind.SYMBOL) && token.text().equals(text);
+    }
+
+    private boolean accept(String text) {
+        if (at(text)) {
+            position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void expect(String text) {
+        if (!accept(text)) {
+            throw unsupported("expected " + text + " but found '" + peek().text() + "'");
+        }
+    }
+
+    private String word() {
+        Token token = peek();
+
+        if (token.kind() != Kind.WORD) {
+            throw unsupported("expected a name but found '" + token.text() + "'");
+        }
+
+        position++;
+
+        return token.text();
+    }
+
+    private Statement statement() {
+        if (accept("select")) {
+            return select();
+        }
+
+        if (accept("insert")) {
+            return insert();
+        }
+
+        if (accept("update")) {
+            return update();
+        }
+
+        if (accept("delete")) {
+            return delete();
+        }
+
+        throw unsupported("only SELECT, INSERT, UPDATE and DELETE are supported");
+    }
+
+    private static final List<String> CLAUSES = List.of("where", "left", "inner", "join", "on", "group", "order", "limit", "set", "values");
+
+    private TableRef tableRef() {
+        String table = word();
+        String alias = null;
+
+        if (accept("as")) {
+            alias = word();
+        } else if (at(Kind.WORD) && !CLAUSES.contains(peek().text())) {
+            alias = word();
+        }
+
+        return new TableRef(table, alias);
+    }
+
+    private ColumnRef columnRef() {
+        String first = word();
+
+        if (accept(".")) {
+            return new ColumnRef(first, word());
+        }
+
+        return new ColumnRef(null, first);
+    }
+
+    private Expr expr() {
+        if (accept("?")) {
+            return new Param(parameters++);
+        }
+
+        if (accept("cast")) {
+            expect("(");
+            Expr value = expr();
+            expect("as");
+            word();
+            expect(")");
+
+            return value;
+        }
+
+        if (accept("null")) {
+            return new Literal(null);
+        }
+
+        Token token = peek();
+
+        if (token.kind() == Kind.NUMBER) {
+            position++;
+            return new Literal(new BigDecimal(token.text()));
+        }
+
+        if (token.kind() == Kind.STRING) {
+            position++;
+            return new Literal(token.text());
+        }
+
+        if (token.kind() == Kind.WORD) {
+            return new Outer(columnRef());
+        }
+
+        throw unsupported("unexpected '" + token.text() + "'");
+    }
+
+    private List<Condition> where() {
+        List<Condition> conditions = new ArrayList<>();
+
+        if (!accept("where")) {
+            return conditions;
+        }
+
+        do {
+            ColumnRef column = columnRef();
+
+            if (accept("=")) {
+                if (accept("any")) {
+                    expect("(");
+                    conditions.add(new Condition(column, Op.ANY, expr(), null));
+                    expect(")");
+                } else {
+                    conditions.add(new Condition(column, Op.EQ, expr(), null));
+                }
+            } else if (accept("between")) {
+                Expr lower = expr();
+                expect("and");
+                conditions.add(new Condition(column, Op.BETWEEN, lower, expr()));
+            } else {
+                throw unsupported("only =, = ANY and BETWEEN conditions are supported");
+            }
+        } while (accept("and"));
+
+        return conditions;
+    }
+
+    private Select select() {
+        boolean distinct = accept("distinct");
+        List<SelectItem> items = new ArrayList<>();
+
+        do {
+            if (accept("*")) {
+                items.add(new SelectItem(null, Aggregate.NONE, false, "*", null));
+            } else if (accept("count")) {
+                expect("(");
+                ColumnRef column = accept("*") ? null : columnRef();
+                expect(")");
+                expect("as");
+                items.add(new SelectItem(column, Aggregate.COUNT, false, word(), null));
+            } else if (accept("array_agg")) {
+                expect("(");
+                boolean distinctValues = accept("distinct");
+                ColumnRef column = columnRef();
+                expect(")");
+                expect("as");
+                items.add(new SelectItem(column, Aggregate.ARRAY_AGG, distinctValues, word(), null));
+            } else if (accept("array")) {
+                expect("(");
+                expect("select");
+                Select subquery = select();
+                expect(")");
+                expect("as");
+                items.add(new SelectItem(null, Aggregate.ARRAY, false, word(), subquery));
+            } else {
+                ColumnRef column = columnRef();
+                String label = accept("as") ? word() : column.column();
+                items.add(new SelectItem(column, Aggregate.NONE, false, label, null));
+            }
+        } while (accept(","));
+
+        expect("from");
+        TableRef from = tableRef();
+        List<Join> joins = new ArrayList<>();
+
+        while (at("left") || at("inner") || at("join")) {
+            boolean left = accept("left");
+
+            if (!left) {
+                accept("inner");
+            }
+
+            expect("join");
+            TableRef table = tableRef();
+            expect("on");
+            boolean parenthesized = accept("(");
+            ColumnRef first = columnRef();
+            expect("=");
+            ColumnRef second = columnRef();
+
+            if (parenthesized) {
+                expect(")");
+            }
+
+            joins.add(new Join(left, table, first, second));
+        }
+
+        List<Condition> where = where();
+        List<ColumnRef> groupBy = new ArrayList<>();
+        List<OrderItem> orderBy = new ArrayList<>();
+        int limit = -1;
+
+        if (accept("group")) {
+            expect("by");
+
+            do {
+                groupBy.add(columnRef());
+            } while (accept(","));
+        }
+
+        if (accept("order")) {
+            expect("by");
+
+            do {
+                ColumnRef column = columnRef();
+                boolean descending = accept("desc");
+
+                if (!descending) {
+                    accept("asc");
+                }
+
+                orderBy.add(new OrderItem(column, descending));
+            } while (accept(","));
+        }
+
+        if (accept("limit")) {
+            Token token = peek();
+
+            if (token.kind() != Kind.NUMBER) {
+                throw unsupported("LIMIT needs a number");
+            }
+
+            position++;
+            limit = Integer.parseInt(token.text());
+        }
+
+        return new Select(distinct, items, from, joins, where, groupBy, orderBy, limit);
+    }
+
+    private Insert insert() {
+        expect("into");
+        String table = word();
+        List<String> columns = new ArrayList<>();
+        List<Expr> values = new ArrayList<>();
+
+        expect("(");
+
+        do {
+            columns.add(word());
+        } while (accept(","));
+
+        expect(")");
+        expect("values");
+        expect("(");
+
+        do {
+            values.add(expr());
+        } while (accept(","));
+
+        expect(")");
+
+        if (columns.size() != values.size()) {
+            throw new RuntimeException("INSERT has more target columns than expressions");
+        }
+
+        return new Insert(table, columns, values);
+    }
+
+    private Update update() {
+        String table = word();
+        List<Assignment> assignments = new ArrayList<>();
+
+        expect("set");
+
+        do {
+            String column = word();
+            expect("=");
+            assignments.add(new Assignment(column, expr()));
+        } while (accept(","));
+
+        return new Update(table, assignments, where());
+    }
+
+    private Delete delete() {
+        expect("from");
+
+        return new Delete(word(), where());
+    }
+}
@@ -2,10 +2,14 @@ package tables.order;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import tables.Change;
+import tables.EntityCache;
+import tables.LazyList;
 import tables.Table;
 import tables.address.Address;
 import tables.customer.Customer;
@@ -19,7 +23,9 @@ import tables.product.Product;
  */
 public class Order extends Table {
 
-    private static Map<Integer, Order> cache = new HashMap<>();
+    // Weighed by the entities it holds
+    private static final EntityCache<Order> cache = createCache("order", 10 * DEFAULT_CACHE_SIZE,
+            order -> 1 + order.items.size());
 
     private int orderId;
     private int customerId;
@@ -40,17 +46,18 @@ public class Order extends Table {
             status = OrderStatus.valueOf(rs.getString("order_status").toUpperCase());
 
             // Get items
-            items = new ArrayList<>();
+            List<Integer> itemIds = new ArrayList<>();
+
             do {
                 int id = rs.getInt("order_item_id");
 
                 // Value is null
-                if (id == 0) {
-                    break;
+                if (id != 0) {
+                    itemIds.add(id);
                 }
+            } while (nextRow(rs, "order_id", orderId));
 
-                items.add(OrderItem.fromID(id));
-            } while (rs.next());
+            items = new LazyList<>(itemIds, OrderItem::fromIDs);
         } catch (SQLException ex) {
             throw new RuntimeException(ex.getMessage());
         }
@@ -63,21 +70,43 @@ public class Order extends Table {
      * @return order object
      */
     public static Order fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT co.order_id, customer_id, payment_id, order_date, shipping_id, order_status, order_item_id FROM customer_order co "
+                    + "LEFT JOIN order_item oi ON co.order_id = oi.order_id "
+                    + "WHERE co.order_id = ? "
+                    + "ORDER BY order_item_id";
 
+            ResultSet rs = select(query, key);
+
+            return new Order(rs);
+        });
+    }
+
+    /**
+     * Gets many orders with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return orders in the order of the IDs, without IDs that don't exist
+     */
+    public static List<Order> fromIDs(Collection<Integer> ids) {
         String query
                 = "SELECT co.order_id, customer_id, payment_id, order_date, shipping_id, order_status, order_item_id FROM customer_order co "
                 + "LEFT JOIN order_item oi ON co.order_id = oi.order_id "
-                + "WHERE co.order_id = ?";
-
-        ResultSet rs = select(query, id);
-        Order result = new Order(rs);
+                + "WHERE co.order_id = ANY(?) "
+                + "ORDER BY co.order_id, order_item_id";
 
-        cache.put(id, result);
+        return fromIDs(cache, ids, query, "order_id", Order::new);
+    }
 
-        return result;
+    /**
+     * Loads an Order from an ID on a virtual thread
+     *
+     * @param id id
+     * @return future Order
+     */
+    public static CompletableFuture<Order> fromIDAsync(int id) {
+        return async(() -> fromID(id));
     }
 
     /**
@@ -96,8 +125,10 @@ public class Order extends Table {
                 + "VALUES (?, ?, ?, Cast(? as order_status), ?)";
 
         int id = insert(insertQuery, customerId, paymentId, shippingId, status.name().toLowerCase(), orderDate);
+        Order order = fromID(id);
+        order.changed();
 
-        return fromID(id);
+        return order;
     }
 
     /**
@@ -115,8 +146,10 @@ public class Order extends Table {
                 + "VALUES (?, ?, ?, Cast(? as order_status))";
 
         int id = insert(insertQuery, customerId, paymentId, shippingId, status.name().toLowerCase());
+        Order order = fromID(id);
+        order.changed();
 
-        return fromID(id);
+        return order;
     }
 
     /**
@@ -134,22 +167,31 @@ public class Order extends Table {
                 + "VALUES (?, ?, ?, ?)";
 
         int id = insert(insertQuery, customerId, paymentId, shippingId, orderDate);
+        Order order = fromID(id);
+        order.changed();
 
-        return fromID(id);
+        return order;
     }
     
     /**
-     * Deletes the order and all its associated items
+     * Deletes the order and all its associated items in one transaction
      */
     public void deleteOrder() {
-        clearItems();
-        getPayment().deletePayment();
-        
-        String query 
-                = "DELETE FROM customer_order "
-                + "WHERE order_id = ?";
-        
-        delete(query, orderId);
+        inTransaction(() -> {
+            PaymentInfo payment = getPayment();
+
+            clearItems();
+
+            String query
+                    = "DELETE FROM customer_order "
+                    + "WHERE order_id = ?";
+
+            delete(query, orderId);
+            cache.remove(orderId);
+
+            // The payment can only be deleted once the order no longer refers to it
+            payment.deletePayment();
+        });
     }
 
     public int getOrderId() {
@@ -288,9 +330,11 @@ public class Order extends Table {
      * Deletes all items from the order
      */
     public void clearItems() {
-        for (OrderItem item : items) {
-            item.deleteItem();
-        }
+        inTransaction(() -> {
+            for (OrderItem item : items) {
+                item.deleteItem();
+            }
+        });
 
         items = new ArrayList<>();
     }
@@ -307,6 +351,15 @@ public class Order extends Table {
         items.add(orderItem);
     }
 
+    /**
+     * Adds many products to order items with one batched insert
+     *
+     * @param products each product and its quantity
+     */
+    public void addItems(Map<Product, Integer> products) {
+        items.addAll(OrderItem.createItems(orderId, products));
+    }
+
     /**
      * Removes the last added item from the list
      *
@@ -359,6 +412,12 @@ public class Order extends Table {
         return false;
     }
 
+    @Override
+    protected List<Change> changes() {
+        // The customer holds its orders
+        return List.of(new Change(cache.getName(), orderId), new Change("customer", customerId));
+    }
+
     @Override
     public String toString() {
         return "Order{" + "orderId=" + orderId + ", customerId=" + customerId + ", paymentId=" + paymentId + ", orderDate=" + orderDate + ", shippingId=" + shippingId + ", status=" + status + ", items=" + items + '}';
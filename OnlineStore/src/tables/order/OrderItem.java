@@ -2,8 +2,12 @@ package tables.order;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import tables.Change;
+import tables.EntityCache;
 import tables.Table;
 import tables.product.Product;
 
@@ -14,7 +18,7 @@ import tables.product.Product;
  */
 public class OrderItem extends Table {
 
-    private static Map<Integer, OrderItem> cache = new HashMap<>();
+    private static final EntityCache<OrderItem> cache = createCache("orderItem", DEFAULT_CACHE_SIZE);
 
     private int orderItemId;
     private int orderId;
@@ -42,20 +46,29 @@ public class OrderItem extends Table {
     }
 
     public static OrderItem fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT order_item_id, order_id, product_id, unit_price, quantity FROM order_item "
+                    + "WHERE order_item_id = ?";
 
-        String query
-                = "SELECT order_item_id, order_id, product_id, unit_price, quantity FROM order_item "
-                + "WHERE order_item_id = ?";
+            ResultSet rs = select(query, key);
 
-        ResultSet rs = select(query, id);
-        OrderItem result = new OrderItem(rs);
+            return new OrderItem(rs);
+        });
+    }
 
-        cache.put(id, result);
+    /**
+     * Gets many order items with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return order items in the order of the IDs, without IDs that don't exist
+     */
+    public static List<OrderItem> fromIDs(Collection<Integer> ids) {
+        String query
+                = "SELECT order_item_id, order_id, product_id, unit_price, quantity FROM order_item "
+                + "WHERE order_item_id = ANY(?)";
 
-        return result;
+        return fromIDs(cache, ids, query, "order_item_id", OrderItem::new);
     }
 
     /**
@@ -73,8 +86,10 @@ public class OrderItem extends Table {
                 + "VALUES (?, ?, ?, ?)";
 
         int id = insert(insertQuery, orderId, productId, unitPrice, quantity);
+        OrderItem item = fromID(id);
+        item.changed();
 
-        return fromID(id);
+        return item;
     }
 
     /**
@@ -89,6 +104,39 @@ public class OrderItem extends Table {
         return OrderItem.createItem(orderId, product.getID(), product.getCurrentUnitPrice(), quantity);
     }
     
+    /**
+     * Method that create many new OrderItems in the database using batched
+     * inserts
+     *
+     * @param orderId order id
+     * @param products each product and its quantity
+     * @return OrderItems in the map's iteration order
+     */
+    public static List<OrderItem> createItems(int orderId, Map<Product, Integer> products) {
+        String insertQuery
+                = "INSERT INTO order_item (order_id, product_id, unit_price, quantity) "
+                + "VALUES (?, ?, ?, ?)";
+
+        List<Object[]> rows = new ArrayList<>(products.size());
+
+        for (Map.Entry<Product, Integer> entry : products.entrySet()) {
+            Product product = entry.getKey();
+
+            rows.add(new Object[]{orderId, product.getID(), product.getCurrentUnitPrice(), entry.getValue()});
+        }
+
+        // The generated keys row holds every inserted column
+        List<OrderItem> result = insertBatch(insertQuery, rows, OrderItem::new);
+
+        for (OrderItem item : result) {
+            cache.put(item.getOrderItemId(), item);
+        }
+
+        publish(List.of(new Change("order", orderId)));
+
+        return result;
+    }
+
     /**
      * Deletes an order item from the database
      */
@@ -98,6 +146,7 @@ public class OrderItem extends Table {
                 + "WHERE order_item_id = ?";
         
         delete(query, orderItemId);
+        cache.remove(orderItemId);
     }
 
     public int getOrderItemId() {
@@ -172,6 +221,12 @@ public class OrderItem extends Table {
         this.quantity = quantity;
     }
 
+    @Override
+    protected List<Change> changes() {
+        // The order holds its items
+        return List.of(new Change(cache.getName(), orderItemId), new Change("order", orderId));
+    }
+
     @Override
     public String toString() {
         return "OrderItem{" + "orderItemId=" + orderItemId + ", orderId=" + orderId + ", productId=" + productId + ", unitPrice=" + unitPrice + ", quantity=" + quantity + '}';
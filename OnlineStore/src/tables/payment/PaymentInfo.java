@@ -1,9 +1,11 @@
 package tables.payment;
 
+import tables.Change;
+import tables.EntityCache;
 import tables.Table;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.sql.*;
+import java.util.List;
 import tables.address.Address;
 import tables.customer.Customer;
 
@@ -13,7 +15,7 @@ import tables.customer.Customer;
  */
 public class PaymentInfo extends Table {
 
-    private static Map<Integer, PaymentInfo> cache = new HashMap<>();
+    private static final EntityCache<PaymentInfo> cache = createCache("paymentInfo", DEFAULT_CACHE_SIZE);
 
     private int paymentId;
     private int billingAddressId;
@@ -39,21 +41,26 @@ public class PaymentInfo extends Table {
     }
 
     public static PaymentInfo fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
-
-        String query
-                = "SELECT payment_id, billing_address_id, firstname, lastname, card_number, exp_date, cvv "
-                + "FROM payment_info "
-                + "WHERE payment_id =?";
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT payment_id, billing_address_id, firstname, lastname, card_number, exp_date, cvv "
+                    + "FROM payment_info "
+                    + "WHERE payment_id =?";
 
-        ResultSet rs = select(query, id);
-        PaymentInfo result = new PaymentInfo(rs);
+            ResultSet rs = select(query, key);
 
-        cache.put(id, result);
+            return new PaymentInfo(rs);
+        });
+    }
 
-        return result;
+    /**
+     * Loads a PaymentInfo from an ID on a virtual thread
+     *
+     * @param id id
+     * @return future PaymentInfo
+     */
+    public static CompletableFuture<PaymentInfo> fromIDAsync(int id) {
+        return async(() -> fromID(id));
     }
 
     /**
@@ -83,6 +90,7 @@ public class PaymentInfo extends Table {
                 + "WHERE payment_id=?";
 
         delete(query, paymentId);
+        cache.remove(paymentId);
     }
 
     public int getPaymentId() {
@@ -193,6 +201,11 @@ public class PaymentInfo extends Table {
         this.cvv = cvv;
     }
 
+    @Override
+    protected List<Change> changes() {
+        return List.of(new Change(cache.getName(), paymentId));
+    }
+
     @Override
     public String toString() {
         return "PaymentInfo{" + "paymentId=" + paymentId + ", billingAddressId=" + billingAddressId + ", firstName=" + firstName + ", lastName=" + lastName + ", cardNumber=" + cardNumber + ", expDate=" + expDate + ", cvv=" + cvv + '}';
@@ -0,0 +1,189 @@
+package tables.product;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import tables.Table;
+import tables.distributor.Distributor;
+
+/**
+ * Fills the entity caches with the catalog before customers ask for it: every
+ * product type, the best selling products of the last
+ * onlinestore.warmup.days days of orders (default 30) up to
+ * onlinestore.warmup.products of them (default 1000), and their distributors.
+ * Runs when onlinestore.warmup is true.
+ * <p>
+ * Each phase splits its sorted IDs into onlinestore.warmup.parallelism ranges
+ * (default 4) that are loaded at once, each on its own pooled connection.
+ * Product types are loaded first, so products find their categories cached.
+ * Progress is logged after every phase.
+ *
+ * @author karsten
+ */
+public class CatalogWarmup extends Table {
+
+    private static final Logger LOGGER = Logger.getLogger(CatalogWarmup.class.getName());
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("onlinestore.warmup", "false"));
+    private static final int PRODUCTS = Integer.getInteger("onlinestore.warmup.products", 1000);
+    private static final int DAYS = Integer.getInteger("onlinestore.warmup.days", 30);
+    private static final int PARALLELISM = Math.max(1, Integer.getInteger("onlinestore.warmup.parallelism", 4));
+
+    /**
+     * Outcome of a warm-up
+     *
+     * @param loaded entities loaded into each cache, in the order they were
+     * loaded
+     * @param nanos time the whole warm-up took
+     */
+    public record WarmupResult(Map<String, Integer> loaded, long nanos) {
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(String.format("Warmed up the catalog in %.2fs", nanos / 1_000_000_000.0));
+
+            loaded.forEach((cache, count) -> result.append(String.format("%n  %-14s %d", cache, count)));
+
+            return result.toString();
+        }
+    }
+
+    /**
+     * Gets whether onlinestore.warmup asks for a warm-up at startup
+     *
+     * @return enabled
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Warms up the caches in the background. The result is logged when it
+     * finishes, and a failure is logged instead of thrown, since the caches
+     * still fill on demand.
+     *
+     * @return future result of the warm-up
+     */
+    public static CompletableFuture<WarmupResult> warmUpAsync() {
+        // Its own thread, as it waits on the loads while they hold connections
+        return CompletableFuture.supplyAsync(CatalogWarmup::warmUp, work -> Thread.ofVirtual().name("catalog-warmup").start(work))
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        LOGGER.log(Level.WARNING, "Catalog warm-up failed: {0}", ex.getMessage());
+                    } else {
+                        LOGGER.info(result.toString());
+                    }
+                });
+    }
+
+    /**
+     * Warms up the caches and waits for it
+     *
+     * @return what was loaded
+     */
+    public static WarmupResult warmUp() {
+        long start = System.nanoTime();
+        Map<String, Integer> loaded = new LinkedHashMap<>();
+
+        LOGGER.info(() -> "Warming up the catalog with " + PARALLELISM + " parallel loads");
+
+        loaded.put("productType", load("product types", productTypeIds(), ProductType::fromIDs, start).size());
+
+        List<Product> products = load("products", bestSellerIds(), Product::fromIDs, start);
+        loaded.put("product", products.size());
+
+        TreeSet<Integer> distributorIds = new TreeSet<>();
+
+        for (Product product : products) {
+            distributorIds.add(product.getDistributorId());
+        }
+
+        loaded.put("distributor", load("distributors", new ArrayList<>(distributorIds), Distributor::fromIDs, start).size());
+
+        return new WarmupResult(loaded, System.nanoTime() - start);
+    }
+
+    /**
+     * Loads sorted IDs in contiguous ranges at once and logs how long it took
+     */
+    private static <T> List<T> load(String name, List<Integer> ids, Function<List<Integer>, List<T>> loader, long start) {
+        long phaseStart = System.nanoTime();
+        int rangeSize = Math.max(1, (ids.size() + PARALLELISM - 1) / PARALLELISM);
+
+        List<CompletableFuture<List<T>>> ranges = new ArrayList<>();
+
+        for (int from = 0; from < ids.size(); from += rangeSize) {
+            List<Integer> range = ids.subList(from, Math.min(ids.size(), from + rangeSize));
+
+            ranges.add(async(() -> loader.apply(range)));
+        }
+
+        List<T> loaded = new ArrayList<>();
+
+        for (CompletableFuture<List<T>> range : ranges) {
+            loaded.addAll(range.join());
+        }
+
+        LOGGER.info(() -> String.format("Warm-up loaded %d %s in %d ms (%d ms so far)", loaded.size(), name,
+                (System.nanoTime() - phaseStart) / 1_000_000, (System.nanoTime() - start) / 1_000_000));
+
+        return loaded;
+    }
+
+    private static List<Integer> productTypeIds() {
+        String query
+                = "SELECT category_id FROM product_type "
+                + "ORDER BY category_id";
+
+        try {
+            return ids(select(query));
+        } catch (IllegalArgumentException ex) {
+            // No product types
+            return List.of();
+        }
+    }
+
+    /**
+     * Gets the best selling products of the most recent orders, sorted by ID.
+     * The window ends at the newest order rather than today, so a store
+     * without new orders still warms up what sold last.
+     */
+    private static List<Integer> bestSellerIds() {
+        String newestQuery
+                = "SELECT order_date FROM customer_order "
+                + "ORDER BY order_date DESC LIMIT 1";
+        // LIMIT takes no parameter in the in-memory engine
+        String salesQuery
+                = "SELECT oi.product_id, COUNT(oi.product_id) AS sales FROM order_item oi "
+                + "INNER JOIN customer_order co ON oi.order_id = co.order_id "
+                + "WHERE co.order_date BETWEEN ? AND ? "
+                + "GROUP BY oi.product_id "
+                + "ORDER BY sales DESC, oi.product_id LIMIT " + PRODUCTS;
+
+        if (PRODUCTS < 1) {
+            return List.of();
+        }
+
+        try {
+            LocalDate newest = select(newestQuery).getDate("order_date").toLocalDate();
+            ResultSet rs = select(salesQuery, Date.valueOf(newest.minusDays(DAYS)), Date.valueOf(newest));
+
+            return new ArrayList<>(new TreeSet<>(ids(rs)));
+        } catch (IllegalArgumentException ex) {
+            // No orders yet
+            return List.of();
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package tables.product;
 
 import java.sql.*;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import tables.Table;
 
 /**
@@ -11,6 +15,14 @@ import tables.Table;
  */
 public class Inventory extends Table {
 
+    // One row per product with its category IDs, so a listing is one query.
+    // Needs GROUP BY p.product_id.
+    private static final String PRODUCT_ROWS
+            = "SELECT p.product_id, product_name, product_description, product_quantity, current_unit_price, distributor_id, "
+            + "array_agg(DISTINCT pc.category_id) AS category_ids "
+            + "FROM product p "
+            + "LEFT JOIN product_category pc ON pc.product_id = p.product_id ";
+
     /**
      * List all products
      *
@@ -18,11 +30,67 @@ public class Inventory extends Table {
      */
     public static List<Product> listAllProducts() {
         String query
-                = "SELECT product_id FROM product p ";
+                = PRODUCT_ROWS
+                + "GROUP BY p.product_id "
+                + "ORDER BY p.product_id";
 
         ResultSet rs = select(query);
 
-        return mapIDs(rs, Product::fromID);
+        return Product.fromRows(rs);
+    }
+
+    /**
+     * List all products on a virtual thread
+     *
+     * @return future list of all products
+     */
+    public static CompletableFuture<List<Product>> listAllProductsAsync() {
+        return async(Inventory::listAllProducts);
+    }
+
+    /**
+     * Lazily streams all products without holding the whole catalog in
+     * memory. Each product is built from its own row and isn't cached. The
+     * stream must be closed.
+     *
+     * @return stream of all products
+     */
+    public static Stream<Product> streamAllProducts() {
+        String query
+                = PRODUCT_ROWS
+                + "GROUP BY p.product_id";
+
+        // Read before the cursor holds its connection, so no row needs another
+        Map<Integer, ProductType> types = new HashMap<>();
+
+        try {
+            for (ProductType type : ProductType.getAllProductTypes()) {
+                types.put(type.getCategoryId(), type);
+            }
+        } catch (IllegalArgumentException ex) {
+            // No product types
+        }
+
+        return stream(query, rs -> Product.fromRow(rs, types));
+    }
+
+    /**
+     * List the IDs of the categories that have products, so browsing one never
+     * comes up empty
+     *
+     * @return category IDs in order
+     */
+    public static List<Integer> listCategoryIdsWithProducts() {
+        String query
+                = "SELECT DISTINCT category_id FROM product_category "
+                + "ORDER BY category_id";
+
+        try {
+            return ids(select(query));
+        } catch (IllegalArgumentException ex) {
+            // No product has a category
+            return List.of();
+        }
     }
 
     /**
@@ -32,13 +100,14 @@ public class Inventory extends Table {
      */
     public static List<Product> listAllProductsInCustomerWishlist() {
         String query
-                = "SELECT DISTINCT p.product_id FROM product p "
-                + "LEFT JOIN product_category pc ON pc.product_id = p.product_id "
-                + "INNER JOIN wishlist_items wi ON p.product_id = wi.product_id";
+                = PRODUCT_ROWS
+                + "INNER JOIN wishlist_items wi ON p.product_id = wi.product_id "
+                + "GROUP BY p.product_id "
+                + "ORDER BY p.product_id";
 
         ResultSet rs = select(query);
 
-        return mapIDs(rs, Product::fromID);
+        return Product.fromRows(rs);
     }
 
     /**
@@ -48,13 +117,15 @@ public class Inventory extends Table {
      */
     public static List<Product> listAllProductsInCustomerOrders() {
         String query
-                = "SELECT DISTINCT p.product_id FROM product p "
+                = PRODUCT_ROWS
                 + "INNER JOIN order_item oi ON p.product_id = oi.product_id "
-                + "INNER JOIN customer_order co ON oi.order_id = co.order_id";
+                + "INNER JOIN customer_order co ON oi.order_id = co.order_id "
+                + "GROUP BY p.product_id "
+                + "ORDER BY p.product_id";
 
         ResultSet rs = select(query);
 
-        return mapIDs(rs, Product::fromID);
+        return Product.fromRows(rs);
     }
 
     /**
@@ -72,7 +143,7 @@ public class Inventory extends Table {
         try {
             ResultSet rs = select(query);
 
-            return mapIDs(rs, Product::fromID).get(0);
+            return Product.fromIDs(ids(rs)).get(0);
         } catch (RuntimeException ex) {
         }
 
@@ -88,13 +159,14 @@ public class Inventory extends Table {
      */
     public static List<Product> listAllProductsInPriceRange(double minPrice, double maxPrice) {
         String query
-                = "SELECT p.product_id FROM product p "
+                = PRODUCT_ROWS
                 + "WHERE current_unit_price BETWEEN ? AND ? "
-                + "ORDER BY current_unit_price, product_id";
+                + "GROUP BY p.product_id "
+                + "ORDER BY current_unit_price, p.product_id";
 
         ResultSet rs = select(query, minPrice, maxPrice);
 
-        return mapIDs(rs, Product::fromID);
+        return Product.fromRows(rs);
     }
 
     /**
@@ -104,14 +176,17 @@ public class Inventory extends Table {
      * @return all product in category
      */
     public static List<Product> listAllProductsInCategory(int categoryId) {
+        // Filters on a second join so every category of the product is kept
         String query
-                = "SELECT p.product_id FROM product p "
-                + "INNER JOIN product_category pc ON p.product_id = pc.product_id "
-                + "WHERE pc.category_id = ?";
+                = PRODUCT_ROWS
+                + "INNER JOIN product_category f ON f.product_id = p.product_id "
+                + "WHERE f.category_id = ? "
+                + "GROUP BY p.product_id "
+                + "ORDER BY p.product_id";
 
         ResultSet rs = select(query, categoryId);
 
-        return mapIDs(rs, Product::fromID);
+        return Product.fromRows(rs);
     }
 
     /**
@@ -120,12 +195,15 @@ public class Inventory extends Table {
      * @return mot expensive product
      */
     public static Product mostExpensiveProduct() throws RuntimeException {
-        String query = "SELECT product_id FROM product ORDER BY current_unit_price DESC LIMIT 1";
+        String query
+                = PRODUCT_ROWS
+                + "GROUP BY p.product_id "
+                + "ORDER BY current_unit_price DESC LIMIT 1";
 
         try {
             ResultSet rs = select(query);
 
-            return mapIDs(rs, Product::fromID).get(0);
+            return Product.fromRows(rs).get(0);
         } catch (RuntimeException ex) {
         }
 
@@ -134,12 +212,15 @@ public class Inventory extends Table {
 
     // Find the highest product in stock (with the most quantity)
     public static Product highestProductInStock() throws RuntimeException {
-        String query = "SELECT product_id FROM product ORDER BY product_quantity DESC LIMIT 1";
+        String query
+                = PRODUCT_ROWS
+                + "GROUP BY p.product_id "
+                + "ORDER BY product_quantity DESC LIMIT 1";
 
         try {
             ResultSet rs = select(query);
 
-            return mapIDs(rs, Product::fromID).get(0);
+            return Product.fromRows(rs).get(0);
         } catch (RuntimeException ex) {
         }
 
@@ -1,16 +1,15 @@
 package tables.product;
 
+import tables.EntityCache;
 import tables.Table;
 import java.util.List;
 import java.sql.*;
-import java.util.HashMap;
-import java.util.Map;
 /**
  *
  * @author Kaitlyn
  */
 public class PriceChange extends Table {
-    private static final Map<Integer, PriceChange> cache = new HashMap<>();
+    private static final EntityCache<PriceChange> cache = createCache("priceChange", DEFAULT_CACHE_SIZE);
     
     private int priceChangeId;
     private int productId;
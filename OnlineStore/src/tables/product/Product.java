@@ -1,10 +1,17 @@
 package tables.product;
 
 import java.sql.*;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import tables.Change;
+import tables.EntityCache;
 import tables.Table;
 import tables.distributor.Distributor;
 
@@ -15,7 +22,8 @@ import tables.distributor.Distributor;
  */
 public class Product extends Table {
 
-    private static final Map<Integer, Product> cache = new HashMap<>();
+    // Stock and prices change in other processes, so don't keep them for long
+    private static final EntityCache<Product> cache = createCache("product", 5 * DEFAULT_CACHE_SIZE, Duration.ofSeconds(30));
 
     private int id;
     private String name;
@@ -25,7 +33,48 @@ public class Product extends Table {
     private int distributorId;
     private List<ProductType> categories;
 
+    /**
+     * Values for a product that has not been inserted yet
+     *
+     * @param name name
+     * @param description description
+     * @param quantity quantity
+     * @param unitPrice unit price
+     * @param distributorId distributor id
+     */
+    public record NewProduct(String name, String description, int quantity, double unitPrice, int distributorId) {
+
+    }
+
     protected Product(ResultSet rs) {
+        this(rs, new ArrayList<>());
+
+        try {
+            // Get categories
+            List<Integer> categoryIds = new ArrayList<>();
+
+            do {
+                int categoryId = rs.getInt("category_id");
+
+                // Value is null
+                if (categoryId != 0) {
+                    categoryIds.add(categoryId);
+                }
+            } while (nextRow(rs, "product_id", id));
+
+            categories.addAll(ProductType.fromIDs(categoryIds));
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Creates a Product from the product columns of the current row
+     *
+     * @param rs ResultSet row representing the Product
+     * @param categories the product's categories
+     */
+    private Product(ResultSet rs, List<ProductType> categories) {
         try {
             id = rs.getInt("product_id");
             name = rs.getString("product_name");
@@ -34,18 +83,7 @@ public class Product extends Table {
             unitPrice = rs.getDouble("current_unit_price");
             distributorId = rs.getInt("distributor_id");
 
-            // Get categories
-            categories = new ArrayList<>();
-            do {
-                int id = rs.getInt("category_id");
-
-                // Value is null
-                if (id == 0) {
-                    break;
-                }
-
-                categories.add(ProductType.fromID(id));
-            } while (rs.next());
+            this.categories = categories;
         } catch (SQLException ex) {
             throw new RuntimeException(ex.getMessage());
         }
@@ -58,23 +96,123 @@ public class Product extends Table {
      * @return Product
      */
     public static Product fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT p.product_id, product_name, product_description, product_quantity, current_unit_price, distributor_id, pt.category_id "
+                    + "FROM product p "
+                    + "LEFT JOIN product_category pc ON pc.product_id = p.product_id "
+                    + "LEFT JOIN product_type pt ON pt.category_id = pc.category_id "
+                    + "WHERE p.product_id=? "
+                    + "ORDER BY pt.category_id";
+
+            ResultSet rs = select(query, key);
+
+            return new Product(rs);
+        });
+    }
 
+    /**
+     * Gets many products with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return products in the order of the IDs, without IDs that don't exist
+     */
+    public static List<Product> fromIDs(Collection<Integer> ids) {
         String query
                 = "SELECT p.product_id, product_name, product_description, product_quantity, current_unit_price, distributor_id, pt.category_id "
                 + "FROM product p "
                 + "LEFT JOIN product_category pc ON pc.product_id = p.product_id "
                 + "LEFT JOIN product_type pt ON pt.category_id = pc.category_id "
-                + "WHERE p.product_id=?";
+                + "WHERE p.product_id = ANY(?) "
+                + "ORDER BY p.product_id, pt.category_id";
 
-        ResultSet rs = select(query, id);
-        Product result = new Product(rs);
+        return fromIDs(cache, ids, query, "product_id", Product::new);
+    }
 
-        cache.put(id, result);
+    /**
+     * Creates and caches products from rows that hold their category IDs in a
+     * category_ids array, as the Inventory listings return them. The
+     * categories of every row are loaded together.
+     *
+     * @param rs result positioned on its first row
+     * @return products in row order
+     */
+    static List<Product> fromRows(ResultSet rs) {
+        List<Product> products = new ArrayList<>();
+        List<List<Integer>> categoryIds = new ArrayList<>();
+        Set<Integer> allCategoryIds = new HashSet<>();
 
-        return result;
+        try {
+            do {
+                List<Integer> ids = idArray(rs, "category_ids");
+
+                products.add(new Product(rs, new ArrayList<>()));
+                categoryIds.add(ids);
+                allCategoryIds.addAll(ids);
+            } while (rs.next());
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        Map<Integer, ProductType> types = new HashMap<>();
+
+        for (ProductType type : ProductType.fromIDs(allCategoryIds)) {
+            types.put(type.getCategoryId(), type);
+        }
+
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+
+            for (int categoryId : categoryIds.get(i)) {
+                ProductType type = types.get(categoryId);
+
+                if (type != null) {
+                    product.categories.add(type);
+                }
+            }
+
+            cache.put(product.getID(), product);
+        }
+
+        return products;
+    }
+
+    /**
+     * Creates a product from a row that holds its category IDs in a
+     * category_ids array, without caching it. Streams use it, as they read
+     * more products than the cache should hold and can't run queries of their
+     * own while their cursor is open.
+     *
+     * @param rs result positioned on a row
+     * @param types product types by ID
+     * @return product
+     */
+    static Product fromRow(ResultSet rs, Map<Integer, ProductType> types) {
+        Product product = new Product(rs, new ArrayList<>());
+
+        try {
+            for (int categoryId : idArray(rs, "category_ids")) {
+                ProductType type = types.get(categoryId);
+
+                if (type != null) {
+                    product.categories.add(type);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+
+        return product;
+    }
+
+    /**
+     * Loads a Product from an ID on a virtual thread
+     *
+     * @param id id
+     * @return future Product
+     */
+    public static CompletableFuture<Product> fromIDAsync(int id) {
+        return async(() -> fromID(id));
     }
 
     /**
@@ -93,8 +231,39 @@ public class Product extends Table {
                 + "VALUES (?, ?, ?, ?, ?)";
 
         int id = insert(insertQuery, name, description, quantity, unitPrice, distributorId);
+        Product product = fromID(id);
+        product.changed();
+
+        return product;
+    }
+
+    /**
+     * Creates many new Products using batched inserts
+     *
+     * @param products values of each product
+     * @return Products in the same order as the input
+     */
+    public static List<Product> createProducts(List<NewProduct> products) {
+        String insertQuery
+                = "INSERT INTO product (product_name, product_description, product_quantity, current_unit_price, distributor_id) "
+                + "VALUES (?, ?, ?, ?, ?)";
+
+        List<Object[]> rows = new ArrayList<>(products.size());
+
+        for (NewProduct p : products) {
+            rows.add(new Object[]{p.name(), p.description(), p.quantity(), p.unitPrice(), p.distributorId()});
+        }
+
+        // New products have no categories yet
+        List<Product> result = insertBatch(insertQuery, rows, rs -> new Product(rs, new ArrayList<>()));
+
+        for (Product product : result) {
+            cache.put(product.getID(), product);
+        }
 
-        return fromID(id);
+        publish(result.stream().flatMap(product -> product.changes().stream()).distinct().toList());
+
+        return result;
     }
 
     /**
@@ -103,13 +272,16 @@ public class Product extends Table {
     public void deleteProduct() {
 //        throw new UnsupportedOperationException("This method is not implemented yet. PriceChange object must exist first");
 
-        clearCategories();
-        
-        String query = "DELETE FROM product_price_change WHERE product_id=?; "
-                + "DELETE FROM product "
-                + "WHERE product_id=?";
-        
-        deleteMultipleRows(query, id, id);
+        inTransaction(() -> {
+            clearCategories();
+
+            String query = "DELETE FROM product_price_change WHERE product_id=?; "
+                    + "DELETE FROM product "
+                    + "WHERE product_id=?";
+
+            deleteMultipleRows(query, id, id);
+            cache.remove(id);
+        });
     }
 
     public int getID() {
@@ -232,6 +404,7 @@ public class Product extends Table {
         insert(insertQuery, id, productType.getCategoryId());
 
         categories.add(productType);
+        changed();
     }
 
     /**
@@ -253,6 +426,7 @@ public class Product extends Table {
     public void removeCategory(ProductType productType) {
         productType.removeProductType(id);
         categories.remove(productType);
+        changed();
     }
 
     /**
@@ -265,11 +439,22 @@ public class Product extends Table {
         
     }
 
+    @Override
+    protected List<Change> changes() {
+        // The distributor holds its products
+        return List.of(new Change(cache.getName(), id), new Change("distributor", distributorId));
+    }
+
     @Override
     public String toString() {
         return "Product{" + "id=" + id + ", name=" + name + ", description=" + description + ", quantity=" + quantity + ", unitPrice=" + unitPrice + ", distributorId=" + distributorId + ", categories=" + categories + '}';
     }
 
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -1,9 +1,10 @@
 package tables.product;
 
 import java.sql.*;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import tables.Change;
+import tables.EntityCache;
 import tables.Table;
 
 /**
@@ -13,7 +14,7 @@ import tables.Table;
  */
 public class ProductType extends Table {
 
-    private static Map<Integer, ProductType> cache = new HashMap<>();
+    private static final EntityCache<ProductType> cache = createCache("productType", DEFAULT_CACHE_SIZE);
 
     private int categoryId;
     private String categoryName;
@@ -33,20 +34,29 @@ public class ProductType extends Table {
     }
 
     public static ProductType fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT category_id, category_name FROM product_type "
+                    + "WHERE category_id = ?";
 
-        String query
-                = "SELECT category_id, category_name FROM product_type "
-                + "WHERE category_id = ?";
+            ResultSet rs = select(query, key);
 
-        ResultSet rs = select(query, id);
-        ProductType result = new ProductType(rs);
+            return new ProductType(rs);
+        });
+    }
 
-        cache.put(id, result);
+    /**
+     * Gets many product types with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return product types in the order of the IDs, without IDs that don't exist
+     */
+    public static List<ProductType> fromIDs(Collection<Integer> ids) {
+        String query
+                = "SELECT category_id, category_name FROM product_type "
+                + "WHERE category_id = ANY(?)";
 
-        return result;
+        return fromIDs(cache, ids, query, "category_id", ProductType::new);
     }
     
     public static List<ProductType> getAllProductTypes() {
@@ -56,7 +66,7 @@ public class ProductType extends Table {
 
         ResultSet rs = select(query);
 
-        return mapIDs(rs, ProductType::fromID);
+        return fromIDs(ids(rs));
     }
     
     public void removeProductType(int id) {
@@ -119,6 +129,11 @@ public class ProductType extends Table {
         this.categoryName = categoryName;
     }
 
+    @Override
+    protected List<Change> changes() {
+        return List.of(new Change(cache.getName(), categoryId));
+    }
+
     @Override
     public String toString() {
         return "ProductType{" + "categoryId=" + categoryId + ", categoryName=" + categoryName + '}';
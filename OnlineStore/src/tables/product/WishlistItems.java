@@ -1,7 +1,6 @@
 package tables.product;
 
-import java.util.HashMap;
-import java.util.Map;
+import tables.EntityCache;
 import tables.Table;
 import java.sql.*;
 import java.util.ArrayList;
@@ -13,7 +12,7 @@ import java.util.List;
  */
 public class WishlistItems extends Table{
 
-    private static Map<Integer, WishlistItems> cache = new HashMap<>();
+    private static final EntityCache<WishlistItems> cache = createCache("wishlistItems", DEFAULT_CACHE_SIZE);
     
     private int wishlistItemId;
     private int wishlistId;
@@ -45,17 +44,14 @@ public class WishlistItems extends Table{
     }
     
     public static WishlistItems fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
-        String query = "SELECT wishlist_item_id, wi.wishlist_id, wi.product_id, quantity FROM wishlist_items wi"
-                + "RIGHT JOIN wishlist ON wi.wishlist_id = wishlist.wishlist_id"
-                + "WHERE wi.wishlist_id = ?";
-        ResultSet rs = select(query, id);
-        WishlistItems result = new WishlistItems(rs);
-        
-        cache.put(id, result);
-        return result;
+        return cache.get(id, key -> {
+            String query = "SELECT wishlist_item_id, wi.wishlist_id, wi.product_id, quantity FROM wishlist_items wi"
+                    + "RIGHT JOIN wishlist ON wi.wishlist_id = wishlist.wishlist_id"
+                    + "WHERE wi.wishlist_id = ?";
+            ResultSet rs = select(query, key);
+
+            return new WishlistItems(rs);
+        });
     }
         
         
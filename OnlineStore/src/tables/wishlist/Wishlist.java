@@ -1,10 +1,12 @@
 package tables.wishlist;
 
-import java.util.HashMap;
-import java.util.Map;
+import tables.Change;
+import tables.EntityCache;
+import tables.LazyList;
 import tables.Table;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 import tables.product.Product;
@@ -15,7 +17,9 @@ import tables.product.Product;
  */
 public class Wishlist extends Table {
 
-    private static final Map<Integer, Wishlist> cache = new HashMap<>();
+    // Weighed by the entities it holds
+    private static final EntityCache<Wishlist> cache = createCache("wishlist", 10 * DEFAULT_CACHE_SIZE,
+            wishlist -> 1 + wishlist.items.size());
 
     private int wishlistId;
     private int customerId;
@@ -28,36 +32,51 @@ public class Wishlist extends Table {
             customerId = rs.getInt("customer_id");
             name = rs.getString("wishlist_name");
 
-            items = new ArrayList<>();
+            List<Integer> itemIds = new ArrayList<>();
+
             do {
                 int id = rs.getInt("wishlist_item_id");
 
                 // Value is null
-                if (id == 0) {
-                    break;
+                if (id != 0) {
+                    itemIds.add(id);
                 }
-                items.add(WishlistItem.fromID(id));
-            } while (rs.next());
+            } while (nextRow(rs, "wishlist_id", wishlistId));
+
+            items = new LazyList<>(itemIds, WishlistItem::fromIDs);
         } catch (SQLException ex) {
             throw new RuntimeException(ex.getMessage());
         }
     }
 
     public static Wishlist fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT w.wishlist_id, wishlist_name, customer_id, wishlist_item_id FROM wishlist w "
+                    + "LEFT JOIN wishlist_items wi ON w.wishlist_id = wi.wishlist_id "
+                    + "WHERE w.wishlist_id = ? "
+                    + "ORDER BY wishlist_item_id";
+
+            ResultSet rs = select(query, key);
 
+            return new Wishlist(rs);
+        });
+    }
+
+    /**
+     * Gets many wishlists with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return wishlists in the order of the IDs, without IDs that don't exist
+     */
+    public static List<Wishlist> fromIDs(Collection<Integer> ids) {
         String query
                 = "SELECT w.wishlist_id, wishlist_name, customer_id, wishlist_item_id FROM wishlist w "
                 + "LEFT JOIN wishlist_items wi ON w.wishlist_id = wi.wishlist_id "
-                + "WHERE w.wishlist_id = ?";
-
-        ResultSet rs = select(query, id);
-        Wishlist result = new Wishlist(rs);
+                + "WHERE w.wishlist_id = ANY(?) "
+                + "ORDER BY w.wishlist_id, wishlist_item_id";
 
-        cache.put(id, result);
-        return result;
+        return fromIDs(cache, ids, query, "wishlist_id", Wishlist::new);
     }
 
     public static Wishlist createWishlist(int customerId, String name) {
@@ -66,18 +85,23 @@ public class Wishlist extends Table {
                 + "VALUES (?, ?)";
 
         int id = insert(insertQuery, customerId, name);
+        Wishlist wishlist = fromID(id);
+        wishlist.changed();
 
-        return fromID(id);
+        return wishlist;
     }
 
     public void deleteWishlist() {
-        clearItems();
+        inTransaction(() -> {
+            clearItems();
 
-        String query
-                = "DELETE FROM wishlist "
-                + "WHERE wishlist_id=?";
+            String query
+                    = "DELETE FROM wishlist "
+                    + "WHERE wishlist_id=?";
 
-        delete(query, wishlistId);
+            delete(query, wishlistId);
+            cache.remove(wishlistId);
+        });
     }
 
     /**
@@ -145,9 +169,11 @@ public class Wishlist extends Table {
      * Clears and deletes all items from the wishlist
      */
     public void clearItems() {
-        for (WishlistItem item : items) {
-            item.deleteItem();
-        }
+        inTransaction(() -> {
+            for (WishlistItem item : items) {
+                item.deleteItem();
+            }
+        });
 
         items = new ArrayList<>();
     }
@@ -192,6 +218,12 @@ public class Wishlist extends Table {
         this.name = name;
     }
 
+    @Override
+    protected List<Change> changes() {
+        // The customer holds its wishlists
+        return List.of(new Change(cache.getName(), wishlistId), new Change("customer", customerId));
+    }
+
     @Override
     public String toString() {
         return "Wishlist{" + "wishlistId=" + wishlistId + ", customerId=" + customerId + ", name=" + name + ", items=" + items + '}';
@@ -2,8 +2,10 @@ package tables.wishlist;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
+import tables.Change;
+import tables.EntityCache;
 import tables.Table;
 import tables.product.Product;
 
@@ -14,7 +16,7 @@ import tables.product.Product;
  */
 public class WishlistItem extends Table {
 
-    private static final Map<Integer, WishlistItem> cache = new HashMap<>();
+    private static final EntityCache<WishlistItem> cache = createCache("wishlistItem", DEFAULT_CACHE_SIZE);
 
     private int wishlistItemId;
     private int wishlistId;
@@ -39,20 +41,29 @@ public class WishlistItem extends Table {
     }
 
     public static WishlistItem fromID(int id) {
-        if (cache.containsKey(id)) {
-            return cache.get(id);
-        }
+        return cache.get(id, key -> {
+            String query
+                    = "SELECT wishlist_item_id, wishlist_id, product_id, quantity FROM wishlist_items "
+                    + "WHERE wishlist_item_id = ?";
 
-        String query
-                = "SELECT wishlist_item_id, wishlist_id, product_id, quantity FROM wishlist_items "
-                + "WHERE wishlist_item_id = ?";
+            ResultSet rs = select(query, key);
 
-        ResultSet rs = select(query, id);
-        WishlistItem result = new WishlistItem(rs);
+            return new WishlistItem(rs);
+        });
+    }
 
-        cache.put(id, result);
+    /**
+     * Gets many wishlist items with one query for all that aren't cached
+     *
+     * @param ids ids
+     * @return wishlist items in the order of the IDs, without IDs that don't exist
+     */
+    public static List<WishlistItem> fromIDs(Collection<Integer> ids) {
+        String query
+                = "SELECT wishlist_item_id, wishlist_id, product_id, quantity FROM wishlist_items "
+                + "WHERE wishlist_item_id = ANY(?)";
 
-        return result;
+        return fromIDs(cache, ids, query, "wishlist_item_id", WishlistItem::new);
     }
 
     /**
@@ -69,8 +80,10 @@ public class WishlistItem extends Table {
                 + "VALUES (?, ?, ?)";
 
         int id = insert(insertQuery, wishlistId, productId, quantity);
+        WishlistItem item = fromID(id);
+        item.changed();
 
-        return fromID(id);
+        return item;
     }
 
     /**
@@ -94,6 +107,7 @@ public class WishlistItem extends Table {
                 + "WHERE wishlist_item_id = ?";
 
         delete(query, wishlistItemId);
+        cache.remove(wishlistItemId);
     }
 
     public int getWishlistItemId() {
@@ -164,6 +178,12 @@ public class WishlistItem extends Table {
         this.quantity = quantity;
     }
 
+    @Override
+    protected List<Change> changes() {
+        // The wishlist holds its items
+        return List.of(new Change(cache.getName(), wishlistItemId), new Change("wishlist", wishlistId));
+    }
+
     @Override
     public String toString() {
         return "WishlistItem{" + "wishlistItemId=" + wishlistItemId + ", wishlistId=" + wishlistId + ", productId=" + productId + ", quantity=" + quantity + '}';
@@ -1,7 +1,11 @@
 package view;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+import tables.CacheStats;
+import tables.StatementStats;
 import tables.address.Address;
 import tables.customer.Customer;
 import tables.distributor.Distributor;
@@ -28,6 +32,10 @@ public class Mappings {
     public final static Function<Distributor, String> MAP_DISTRIBUTOR = (d) -> String.format("Distributor ID: %d", d.getID());
     public final static Function<Product, String> MAP_PRODUCT = (p) -> String.format("Name: %s; Unit Price: %.2f; Categories: %s", p.getName(), p.getCurrentUnitPrice(), Mappings.MAP_PRODUCT_TYPES.apply(p.getCategories()));
     public final static Function<Wishlist, String> MAP_WISHLIST = (w) -> String.format("Name: %s; Order Total Price: %.2f", w.getName(), w.getTotalPrice());
+    public final static Function<StatementStats, String> MAP_STATEMENT_STATS = (s) -> String.format("Calls: %d; Rows: %d; Errors: %d; Total: %.1fms; p50: %.2fms; p95: %.2fms; p99: %.2fms; Max: %.2fms\n    %s",
+            s.getCalls(), s.getRows(), s.getErrors(), s.getTotalMillis(), s.getP50Millis(), s.getP95Millis(), s.getP99Millis(), s.getMaxMillis(), s.getSql());
+    public final static Function<CacheStats, String> MAP_CACHE_STATS = (c) -> String.format("%-14s Hit Ratio: %5.1f%%; Hits: %d; Misses: %d; Loads: %d (%d failed, mean %.2fms); Evictions: %d; Expirations: %d; Refreshes: %d (%d failed); Size: %d; Weight: %d/%d",
+            c.getName(), c.getHitRatio() * 100, c.getHits(), c.getMisses(), c.getLoads(), c.getLoadFailures(), c.getMeanLoadMillis(), c.getEvictions(), c.getExpirations(), c.getRefreshes(), c.getRefreshFailures(), c.getSize(), c.getWeight(), c.getMaxWeight());
     public final static Function<List<ProductType>, String> MAP_PRODUCT_TYPES = (l) -> {
         StringBuilder categories = new StringBuilder();
 
@@ -49,6 +57,18 @@ public class Mappings {
             p.getPaymentId(), DETAILED_MAP_ADDRESS.apply(p.getBillAddress()), p.getFirstName(), p.getLastName(), p.getCardNumber(), p.getExpDate().toString(), p.getCvv());
     public final static Function<Order, String> DETAILED_MAP_ORDER = (o)
             -> {
+        // Load the payment and its billing address alongside every item's product
+        CompletableFuture<PaymentInfo> payment = PaymentInfo.fromIDAsync(o.getPaymentId());
+        List<CompletableFuture<?>> loads = new ArrayList<>();
+
+        loads.add(payment.thenCompose(p -> Address.fromIDAsync(p.getBillingAddressId())));
+
+        for (OrderItem item : o.getItems()) {
+            loads.add(Product.fromIDAsync(item.getProductId()));
+        }
+
+        CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new)).join();
+
         StringBuilder items = new StringBuilder();
 
         for (OrderItem item : o.getItems()) {
@@ -58,7 +78,7 @@ public class Mappings {
         }
 
         return String.format("Order ID: %d\nOrder Date: %s\nOrder Status: %s\nOrder Total Price: %.2f\nItems:\n%s\nPayment Info:\n%s\n",
-                o.getOrderId(), o.getOrderDate().toString(), o.getStatus().toString(), o.getTotalPrice(), items.toString(), DETAILED_PAYMENT_INFO.apply(o.getPayment()));
+                o.getOrderId(), o.getOrderDate().toString(), o.getStatus().toString(), o.getTotalPrice(), items.toString(), DETAILED_PAYMENT_INFO.apply(payment.join()));
     };
     public final static Function<Distributor, String> DETAILED_MAP_DISTRIBUTOR = (d) -> String.format("Distributor ID: %s\nAddress:\n%s", d.getID(), DETAILED_MAP_ADDRESS.apply(d.getAddress()));
     public final static Function<Wishlist, String> DETAILED_MAP_WISHLIST_FUNCTION = (o)
@@ -79,7 +99,7 @@ public class Mappings {
                     p.getID(), p.getName(), p.getDescription(), MAP_PRODUCT_TYPES.apply(p.getCategories()), p.getCurrentUnitPrice(), p.getQuantity(), p.isInStock(), p.getDistributorId());
     public final static Function<Customer, String> DETAILED_MAP_CUSTOMER = (c)
             -> String.format("Customer ID: %d\nFirst Name; %s\nLast Name: %s\nEmail: %s\nPhone Number: %s\n# Orders: %d\n# Wishlists: %d",
-                    c.getID(), c.getFirstName(), c.getLastName(), c.getEmail(), c.getPhone(), c.getOrders().size(), c.getWishlists().size());
+                    c.getID(), c.getFirstName(), c.getLastName(), c.getEmail(), c.getPhone(), c.getOrderCount(), c.getWishlistCount());
     public final static Function<List<Product>, String> DETAILED_MAP_PRODUCTS = (l) -> {
         StringBuilder items = new StringBuilder();
 
@@ -0,0 +1,71 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * What a simulated shopper does, with how often they do it relative to the
+ * other operations
+ *
+ * @author karsten
+ */
+public enum Operation {
+    BROWSE_CATEGORY("Browse category", 30),
+    VIEW_PRODUCT("View product", 35),
+    ADD_TO_WISHLIST("Add to wishlist", 10),
+    PLACE_ORDER("Place order", 10),
+    CHECK_ORDER_STATUS("Check order status", 15);
+
+    private static final int TOTAL_WEIGHT;
+
+    static {
+        int total = 0;
+
+        for (Operation operation : values()) {
+            total += operation.weight;
+        }
+
+        TOTAL_WEIGHT = total;
+    }
+
+    private final String label;
+    private final int weight;
+
+    Operation(String label, int weight) {
+        this.label = label;
+        this.weight = weight;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Gets how often this operation is picked, out of the weights of every
+     * operation
+     *
+     * @return weight
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Picks an operation at random by weight
+     *
+     * @param random random source
+     * @return operation
+     */
+    static Operation pick(Random random) {
+        int roll = random.nextInt(TOTAL_WEIGHT);
+
+        for (Operation operation : values()) {
+            roll -= operation.weight;
+
+            if (roll < 0) {
+                return operation;
+            }
+        }
+
+        return VIEW_PRODUCT;
+    }
+}
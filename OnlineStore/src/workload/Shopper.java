@@ -0,0 +1,127 @@
+package workload;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import tables.Table;
+import tables.address.Address;
+import tables.address.AddressType;
+import tables.customer.Customer;
+import tables.order.Order;
+import tables.order.OrderStatus;
+import tables.payment.PaymentInfo;
+import tables.product.Inventory;
+import tables.product.Product;
+import tables.wishlist.Wishlist;
+import view.Mappings;
+
+/**
+ * One simulated shopper. A shopper signs up, then browses categories, looks
+ * at the products they found, wishlists some, orders some and checks on their
+ * orders.
+ *
+ * @author karsten
+ */
+final class Shopper {
+
+    private final int number;
+    private final String run;
+    private final List<Integer> categories;
+    private final Random random;
+
+    private Customer customer;
+    private Address address;
+    private PaymentInfo payment;
+    private Wishlist wishlist;
+    private List<Product> browsed = List.of();
+    private final List<Integer> orders = new ArrayList<>();
+
+    Shopper(int number, String run, List<Integer> categories, Random random) {
+        this.number = number;
+        this.run = run;
+        this.categories = categories;
+        this.random = random;
+    }
+
+    /**
+     * Creates the shopper's customer, address and payment info
+     */
+    void signUp() {
+        address = Address.createAddress(number + " Load St", "Fargo", "ND", "58102", "USA",
+                List.of(AddressType.BILLING, AddressType.SHIPPING));
+        payment = PaymentInfo.createPayment(address.getId(), "Load", "Shopper", 10000000 + number,
+                Date.valueOf(LocalDate.now().plusYears(3)), 100 + number % 900);
+        customer = Customer.createCustomer("Load", "Shopper " + number,
+                "shopper" + number + "." + run + "@example.com", "5550100");
+    }
+
+    /**
+     * Picks the next operation. Operations that need something the shopper
+     * doesn't have yet are replaced by the one that gets it.
+     *
+     * @return next operation
+     */
+    Operation next() {
+        Operation operation = Operation.pick(random);
+
+        if (browsed.isEmpty() && operation != Operation.CHECK_ORDER_STATUS) {
+            return Operation.BROWSE_CATEGORY;
+        }
+
+        if (orders.isEmpty() && operation == Operation.CHECK_ORDER_STATUS) {
+            return browsed.isEmpty() ? Operation.BROWSE_CATEGORY : Operation.PLACE_ORDER;
+        }
+
+        return operation;
+    }
+
+    void perform(Operation operation) {
+        switch (operation) {
+            case BROWSE_CATEGORY ->
+                browsed = Inventory.listAllProductsInCategory(categories.get(random.nextInt(categories.size())));
+            case VIEW_PRODUCT -> {
+                Product product = Product.fromID(pickProduct().getID());
+
+                // Render it like the product menu does
+                Mappings.DETAILED_MAP_PRODUCT.apply(product);
+            }
+            case ADD_TO_WISHLIST -> {
+                if (wishlist == null) {
+                    customer.addWishlist("Saved for later");
+                    wishlist = customer.getWishlists().getLast();
+                }
+
+                wishlist.addItem(pickProduct(), 1 + random.nextInt(3));
+            }
+            case PLACE_ORDER -> {
+                Order order = Table.inTransaction(() -> {
+                    Order created = Order.createOrder(customer.getID(), payment.getPaymentId(), address.getId(), OrderStatus.PENDING);
+                    // An order holds each product once
+                    Set<Product> items = new LinkedHashSet<>();
+
+                    for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                        items.add(pickProduct());
+                    }
+
+                    for (Product product : items) {
+                        created.addItem(product, 1 + random.nextInt(2));
+                    }
+
+                    return created;
+                });
+
+                orders.add(order.getOrderId());
+            }
+            case CHECK_ORDER_STATUS ->
+                Order.fromID(orders.get(random.nextInt(orders.size()))).getStatus();
+        }
+    }
+
+    private Product pickProduct() {
+        return browsed.get(random.nextInt(browsed.size()));
+    }
+}
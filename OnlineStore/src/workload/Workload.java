@@ -0,0 +1,195 @@
+package workload;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import tables.LatencyHistogram;
+import tables.product.Inventory;
+
+/**
+ * Headless load driver. Each simulated shopper runs on its own virtual thread,
+ * repeatedly picking an operation from the Operation mix and pausing for a
+ * think time in between, so the number of shoppers is the concurrency. Run it
+ * with different pool and cache settings to find where throughput stops
+ * growing and latency starts to climb.
+ * <p>
+ * Shoppers create real customers, wishlists and orders, so run it against a
+ * scratch database or the in-memory engine. The store needs at least one
+ * product category with products in it.
+ *
+ * @author karsten
+ */
+public final class Workload {
+
+    private static final Logger LOGGER = Logger.getLogger(Workload.class.getName());
+
+    /**
+     * @param users number of concurrent shoppers
+     * @param duration how long shoppers keep going once every one has signed
+     * up
+     * @param thinkTime average pause between a shopper's operations, picked
+     * uniformly between none and twice this
+     * @param seed seed of the shoppers' random choices, so runs can be
+     * repeated
+     */
+    public record Settings(int users, Duration duration, Duration thinkTime, long seed) {
+
+        public Settings {
+            if (users < 1) {
+                throw new IllegalArgumentException("At least one user is needed");
+            }
+
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException("Duration must be positive");
+            }
+
+            if (thinkTime.isNegative()) {
+                throw new IllegalArgumentException("Think time can't be negative");
+            }
+        }
+
+        public Settings(int users, Duration duration, Duration thinkTime) {
+            this(users, duration, thinkTime, System.nanoTime());
+        }
+    }
+
+    private final Settings settings;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> counts = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final AtomicInteger failedSignUps = new AtomicInteger();
+    private volatile long deadline;
+
+    private Workload(Settings settings) {
+        this.settings = settings;
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            counts.put(operation, new LongAdder());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Runs the workload and waits for it to finish
+     *
+     * @param settings workload settings
+     * @return throughput and latency of each operation
+     * @throws IllegalStateException no product in the store has a category
+     */
+    public static WorkloadReport run(Settings settings) {
+        return new Workload(settings).run();
+    }
+
+    private WorkloadReport run() {
+        // Only categories with products, as browsing an empty one fails
+        List<Integer> categories = Inventory.listCategoryIdsWithProducts();
+
+        if (categories.isEmpty()) {
+            throw new IllegalStateException("The store has no categories with products to browse");
+        }
+
+        // Keeps the shoppers' emails unique across runs
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        CountDownLatch signedUp = new CountDownLatch(settings.users());
+        CountDownLatch started = new CountDownLatch(1);
+        long start;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.users(); i++) {
+                Shopper shopper = new Shopper(i, run, categories, new Random(settings.seed() + i));
+                Random thinking = new Random(~(settings.seed() + i));
+
+                executor.submit(() -> shop(shopper, thinking, signedUp, started));
+            }
+
+            try {
+                signedUp.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            }
+
+            start = System.nanoTime();
+            deadline = start + settings.duration().toNanos();
+            started.countDown();
+        }
+
+        return report(System.nanoTime() - start);
+    }
+
+    private void shop(Shopper shopper, Random thinking, CountDownLatch signedUp, CountDownLatch started) {
+        try {
+            shopper.signUp();
+        } catch (RuntimeException ex) {
+            failedSignUps.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Shopper failed to sign up: {0}", ex.getMessage());
+            return;
+        } finally {
+            signedUp.countDown();
+        }
+
+        try {
+            started.await();
+
+            while (System.nanoTime() < deadline) {
+                Operation operation = shopper.next();
+                long begin = System.nanoTime();
+
+                try {
+                    shopper.perform(operation);
+
+                    latencies.get(operation).record(System.nanoTime() - begin);
+                    counts.get(operation).increment();
+                } catch (RuntimeException ex) {
+                    errors.get(operation).increment();
+                    LOGGER.log(Level.FINE, operation.getLabel() + " failed", ex);
+                }
+
+                think(thinking);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void think(Random random) throws InterruptedException {
+        long think = settings.thinkTime().toNanos();
+
+        if (think == 0) {
+            return;
+        }
+
+        // Never sleep past the end of the run
+        long pause = Math.min((long) (random.nextDouble() * 2 * think), deadline - System.nanoTime());
+
+        if (pause > 0) {
+            Thread.sleep(Duration.ofNanos(pause));
+        }
+    }
+
+    private WorkloadReport report(long nanos) {
+        List<WorkloadReport.OperationStats> operations = new ArrayList<>();
+
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = latencies.get(operation);
+
+            operations.add(new WorkloadReport.OperationStats(operation,
+                    counts.get(operation).sum(), errors.get(operation).sum(),
+                    latency.percentile(0.50) / 1_000_000.0, latency.percentile(0.95) / 1_000_000.0,
+                    latency.percentile(0.99) / 1_000_000.0, latency.getMax() / 1_000_000.0));
+        }
+
+        return new WorkloadReport(settings.users(), failedSignUps.get(), nanos, operations);
+    }
+}
@@ -0,0 +1,77 @@
+package workload;
+
+import java.util.List;
+
+/**
+ * Results of a workload run. Latencies are in milliseconds and only cover
+ * operations that succeeded.
+ *
+ * @param users shoppers that were started
+ * @param failedSignUps shoppers that couldn't sign up and never ran
+ * @param nanos time from the start of the run until every shopper stopped
+ * @param operations results of each operation
+ *
+ * @author karsten
+ */
+public record WorkloadReport(int users, int failedSignUps, long nanos, List<OperationStats> operations) {
+
+    /**
+     * Results of one operation
+     *
+     * @param operation operation
+     * @param count times it succeeded
+     * @param errors times it threw
+     * @param p50Millis median latency
+     * @param p95Millis 95th percentile latency
+     * @param p99Millis 99th percentile latency
+     * @param maxMillis slowest call
+     */
+    public record OperationStats(Operation operation, long count, long errors,
+            double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+
+    }
+
+    public double seconds() {
+        return nanos / 1_000_000_000.0;
+    }
+
+    public long totalCount() {
+        return operations.stream().mapToLong(OperationStats::count).sum();
+    }
+
+    public long totalErrors() {
+        return operations.stream().mapToLong(OperationStats::errors).sum();
+    }
+
+    /**
+     * Gets the successful operations per second
+     *
+     * @return throughput
+     */
+    public double throughput() {
+        return (nanos == 0) ? 0 : totalCount() / seconds();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+
+        report.append(String.format("%d shoppers for %.1fs: %d operations, %.1f ops/s, %d errors",
+                users - failedSignUps, seconds(), totalCount(), throughput(), totalErrors()));
+
+        if (failedSignUps > 0) {
+            report.append(String.format(", %d shoppers failed to sign up", failedSignUps));
+        }
+
+        report.append(String.format("%n%-20s %9s %7s %9s %9s %9s %9s %9s%n",
+                "Operation", "Count", "Errors", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+
+        for (OperationStats stats : operations) {
+            report.append(String.format("%-20s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    stats.operation().getLabel(), stats.count(), stats.errors(), stats.count() / seconds(),
+                    stats.p50Millis(), stats.p95Millis(), stats.p99Millis(), stats.maxMillis()));
+        }
+
+        return report.toString();
+    }
+}
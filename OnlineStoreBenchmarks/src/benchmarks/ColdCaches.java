@@ -0,0 +1,23 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tables.Table;
+
+/**
+ * Empties every entity cache before each call, so the benchmark measures a
+ * lookup that goes to storage. Per-call setup adds a little noise, which is
+ * small next to the queries being measured.
+ *
+ * @author karsten
+ */
+@State(Scope.Thread)
+public class ColdCaches {
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        Table.clearCaches();
+    }
+}
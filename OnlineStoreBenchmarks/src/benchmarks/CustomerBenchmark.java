@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tables.customer.Customer;
+
+/**
+ * Loading a customer together with their orders and wishlists
+ *
+ * @author karsten
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Customers {
+
+        // Orders and wishlists per customer
+        @Param({"1", "25"})
+        public int relations;
+
+        private Customer customer;
+
+        @Setup(Level.Trial)
+        public void setUp(Store store) {
+            customer = store.createCustomer(relations, 3);
+        }
+    }
+
+    @Benchmark
+    public Customer fromId(Customers customers, ColdCaches cold) {
+        return Customer.fromID(customers.customer.getID());
+    }
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import tables.product.Inventory;
+import tables.product.Product;
+
+/**
+ * Listing the whole catalog of Store.PRODUCTS products
+ *
+ * @author karsten
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryBenchmark {
+
+    @Benchmark
+    public List<Product> listAllProducts(Store store, WarmCaches warm) {
+        return Inventory.listAllProducts();
+    }
+
+    @Benchmark
+    public List<Product> listAllProductsCold(Store store, ColdCaches cold) {
+        return Inventory.listAllProducts();
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tables.customer.Customer;
+import tables.order.Order;
+import tables.product.Product;
+import view.Mappings;
+
+/**
+ * Formatting entities for the menus. Entities are loaded once, so this
+ * measures the formatting and the cached lookups it makes.
+ *
+ * @author karsten
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Entities {
+
+        private Product product;
+        private Order order;
+        private Customer customer;
+
+        @Setup(Level.Trial)
+        public void setUp(Store store) {
+            customer = store.createCustomer(3, 5);
+            order = store.createOrder(customer, 10);
+            product = Product.fromID(store.nextProductId());
+
+            // Load once so each call only formats
+            customer = Customer.fromID(customer.getID());
+        }
+    }
+
+    @Benchmark
+    public String mapProduct(Entities entities) {
+        return Mappings.MAP_PRODUCT.apply(entities.product);
+    }
+
+    @Benchmark
+    public String detailedMapProduct(Entities entities) {
+        return Mappings.DETAILED_MAP_PRODUCT.apply(entities.product);
+    }
+
+    @Benchmark
+    public String detailedMapOrder(Entities entities) {
+        return Mappings.DETAILED_MAP_ORDER.apply(entities.order);
+    }
+
+    @Benchmark
+    public String detailedMapCustomer(Entities entities) {
+        return Mappings.DETAILED_MAP_CUSTOMER.apply(entities.customer);
+    }
+}
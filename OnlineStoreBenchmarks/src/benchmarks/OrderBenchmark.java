@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tables.order.Order;
+
+/**
+ * Loading an order with its items, and totalling it
+ *
+ * @author karsten
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Orders {
+
+        @Param({"1", "10", "100"})
+        public int items;
+
+        private Order order;
+
+        @Setup(Level.Trial)
+        public void setUp(Store store) {
+            order = store.createOrder(store.createCustomer(0, 0), items);
+        }
+    }
+
+    @Benchmark
+    public Order fromId(Orders orders, ColdCaches cold) {
+        return Order.fromID(orders.order.getOrderId());
+    }
+
+    @Benchmark
+    public double getTotalPrice(Orders orders) {
+        return orders.order.getTotalPrice();
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import tables.product.Product;
+
+/**
+ * Product lookups by ID, served from the entity cache and from storage
+ *
+ * @author karsten
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductBenchmark {
+
+    @Benchmark
+    public Product fromIdHit(Store store, WarmCaches warm) {
+        return Product.fromID(store.nextProductId());
+    }
+
+    @Benchmark
+    public Product fromIdMiss(Store store, ColdCaches cold) {
+        return Product.fromID(store.nextProductId());
+    }
+}
@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tables.Table;
+import tables.address.Address;
+import tables.address.AddressType;
+import tables.customer.Customer;
+import tables.distributor.Distributor;
+import tables.memory.MemoryEngine;
+import tables.order.Order;
+import tables.order.OrderStatus;
+import tables.payment.PaymentInfo;
+import tables.product.Product;
+
+/**
+ * Catalog every benchmark reads from. With storage=memory it is created in a
+ * fresh in-memory engine. With storage=postgres it is added to the database
+ * DatabaseManager connects to, so point onlinestore.db.url at a scratch
+ * database. Names carry a per-run suffix so repeated runs don't collide.
+ *
+ * @author karsten
+ */
+@State(Scope.Benchmark)
+public class Store {
+
+    public static final int PRODUCTS = 1000;
+
+    private static final String[] CATEGORIES = {"Toys", "Books", "Garden", "Kitchen"};
+
+    @Param({"memory"})
+    public String storage;
+
+    private final String suffix = Long.toString(System.nanoTime(), 36);
+
+    private List<Product> products;
+    private Address address;
+    private PaymentInfo payment;
+    // Shared by every benchmark thread
+    private final AtomicInteger nextProduct = new AtomicInteger();
+    private final AtomicInteger nextCustomer = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (storage) {
+            case "memory" ->
+                Table.setEngine(new MemoryEngine());
+            case "postgres" -> {
+                // The default engine
+            }
+            default ->
+                throw new IllegalArgumentException("Unknown storage " + storage + ", expected memory or postgres");
+        }
+
+        address = Address.createAddress("1 Bench St", "Fargo", "ND", "58102", "USA",
+                List.of(AddressType.BILLING, AddressType.SHIPPING));
+        payment = PaymentInfo.createPayment(address.getId(), "Bench", "Mark", 12345678, Date.valueOf("2030-01-01"), 123);
+
+        Distributor distributor = Distributor.createDistributor("555-" + suffix, address);
+        List<Product.NewProduct> rows = new ArrayList<>(PRODUCTS);
+
+        for (int i = 0; i < PRODUCTS; i++) {
+            rows.add(new Product.NewProduct("Product " + i + " " + suffix, "Benchmark product " + i,
+                    i % 100, 1 + (i % 50) * 1.25, distributor.getID()));
+        }
+
+        products = Product.createProducts(rows);
+
+        for (int i = 0; i < products.size(); i++) {
+            products.get(i).addCategory(CATEGORIES[i % CATEGORIES.length] + " " + suffix);
+        }
+
+        Table.clearCaches();
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    /**
+     * Gets the next product ID, cycling through the whole catalog
+     *
+     * @return product ID
+     */
+    public int nextProductId() {
+        return products.get(Math.floorMod(nextProduct.getAndIncrement(), products.size())).getID();
+    }
+
+    /**
+     * Creates an order with the given number of items
+     *
+     * @param customer customer placing the order
+     * @param items number of distinct products
+     * @return new order
+     */
+    public Order createOrder(Customer customer, int items) {
+        Order order = Order.createOrder(customer.getID(), payment.getPaymentId(), address.getId(), OrderStatus.PENDING);
+        Map<Product, Integer> lines = new LinkedHashMap<>();
+
+        for (int i = 0; i < items; i++) {
+            lines.put(products.get((order.getOrderId() * 31 + i) % products.size()), 1 + i % 5);
+        }
+
+        order.addItems(lines);
+
+        return order;
+    }
+
+    /**
+     * Creates a customer with orders and wishlists
+     *
+     * @param orders number of orders, and of wishlists
+     * @param items items in each order and wishlist
+     * @return new customer
+     */
+    public Customer createCustomer(int orders, int items) {
+        Customer customer = Customer.createCustomer("Bench", "Mark", "bench" + nextCustomer.getAndIncrement() + "." + suffix + "@example.com", "5550100");
+
+        for (int i = 0; i < orders; i++) {
+            createOrder(customer, items);
+            customer.addWishlist("Wishlist " + i);
+
+            for (int j = 0; j < items; j++) {
+                customer.getWishlists().get(i).addItem(products.get((i * 17 + j) % products.size()), 1);
+            }
+        }
+
+        return customer;
+    }
+}
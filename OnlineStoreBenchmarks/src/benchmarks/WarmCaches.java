@@ -0,0 +1,24 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tables.product.Product;
+
+/**
+ * Loads the whole catalog into the entity caches before measuring, so cache
+ * hit benchmarks don't depend on how long warm-up runs
+ *
+ * @author karsten
+ */
+@State(Scope.Benchmark)
+public class WarmCaches {
+
+    @Setup(Level.Trial)
+    public void load(Store store) {
+        for (Product product : store.getProducts()) {
+            Product.fromID(product.getID());
+        }
+    }
+}